@@ -1,7 +1,12 @@
 package org.stringtemplate.v4.misc;
 
+import rwperrott.stringtemplate.v4.TemplateLineIndex;
+
 /**
  * Converts relative template line numbers from STRuntimeMessages, to absolute line numbers.
+ * <br/>
+ * The line and column come from a binary search of the cached TemplateLineIndex of the template, so many messages
+ * from one template, e.g. NO_SUCH_PROPERTY in a loop, don't each count from the start of it.
  *
  * @author rwperrott
  */
@@ -18,27 +23,7 @@ public class STRuntimeMessagePatch extends STRuntimeMessage {
     if (ip < 0 || self == null || self.impl == null) return null;
     final Interval interval = self.impl.sourceMap[ip];
     if (interval == null) return null;
-    // Count line and charPos to I.a position
-    final String s = self.impl.template;
-    int p = 0;
-    int index = interval.a;
-    int line = absoluteStartLineNumber;
-    int charPos = 0;
-    while (p < index) {
-      switch (s.charAt(p++)) {
-        case '\r':
-          if (p < index && s.charAt(p) == '\n')
-            p++;
-        case '\n':
-          charPos = 0;
-          line++;
-          break;
-        default:
-          charPos++;
-          break;
-      }
-    }
-
-    return new Coordinate(line, charPos).toString();
+    final TemplateLineIndex index = TemplateLineIndex.of(self.impl);
+    return new Coordinate(absoluteStartLineNumber + index.line(interval.a), index.column(interval.a)).toString();
   }
 }
@@ -35,10 +35,21 @@ public abstract class AbstractInvokeAdaptor<T> implements ModelAdaptor<T> {
   private static void registerArgsAdapterModelAdapter(final ST self) {
     // This has to be checked every damned time, because maybe a new STGroup,
     // so, it can't be cached!
-    final STGroup stg = self.groupThatCreatedThisInstance;
+    registerArgsAdapterModelAdapter(self.groupThatCreatedThisInstance);
+  }
+
+  /**
+   * Also used by InvokeDispatcher.register
+   */
+  static void registerArgsAdapterModelAdapter(final STGroup stg) {
     if (ARGS_ADAPTER_MODEL_ADAPTER != stg.getModelAdaptor(ArgsAdaptor.class))
       stg.registerModelAdaptor(ArgsAdaptor.class, ARGS_ADAPTER_MODEL_ADAPTER);
   }
+  /**
+   * Returned by getValue, when the property isn't a data value, so must be resolved as a member.
+   */
+  protected static final Object NO_VALUE = new Object();
+
   private final boolean onlyPublic;
 
   protected AbstractInvokeAdaptor(final boolean onlyPublic) {
@@ -65,6 +76,9 @@ public abstract class AbstractInvokeAdaptor<T> implements ModelAdaptor<T> {
 
     // Provided by sub-class
     try {
+      final Object value = getValue(interpreter, self, model, property, propertyName);
+      if (NO_VALUE != value)
+        return value;
       final Class<?> cls = model.getClass();
       if (null == cls)
         throw new ClassNotFoundException();
@@ -93,6 +107,20 @@ public abstract class AbstractInvokeAdaptor<T> implements ModelAdaptor<T> {
     }
   }
 
+  /**
+   * Called before member lookup, to allow a sub-class to resolve data values, e.g. JSON object fields, which
+   * hide members with the same name.
+   *
+   * @return the value, or NO_VALUE, to resolve propertyName as a member.
+   */
+  protected Object getValue(final Interpreter interpreter,
+                            final ST self,
+                            final T model,
+                            final Object property,
+                            final String propertyName) {
+    return NO_VALUE;
+  }
+
   /**
    * @param name
    * @return null or an alias name
@@ -197,13 +225,13 @@ public abstract class AbstractInvokeAdaptor<T> implements ModelAdaptor<T> {
         result = latestMatchingInvoker.invoke(value, args);
 
         // Resolve excess properties:
-        //    call getModelAdapter and getProperty, to part/fully resolving property.
+        //    call getModelAdapter, for the result type, and getProperty, to part/fully resolving property.
         // Unresolved properties could be other ArgsAdaptor instances!
         final STGroup stg = self.groupThatCreatedThisInstance;
         i = latestMatchingInvoker.typeConverterCount();
         while (i < n) {
           final Object arg = args.get(i++);
-          final ModelAdaptor ma = stg.getModelAdaptor(arg.getClass()); // Assume never null
+          final ModelAdaptor ma = InvokeDispatcher.getModelAdaptor(stg, result.getClass()); // Assume never null
           result = ma.getProperty(interpreter, self, result, arg, arg.toString());
         }
         return result;
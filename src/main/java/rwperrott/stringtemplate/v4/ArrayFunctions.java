@@ -0,0 +1,158 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Direct access to any array, for ObjectInvokeAdaptor, without conversion to a List, so that templates over large
+ * primitive arrays neither box the whole array nor copy it.
+ * <br/>
+ * Negative indexes wrap from the end, e.g. -1 is the last element.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class ArrayFunctions {
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class, int.class);
+  /**
+   * Element getters, cached per array class, and adapted to (Object,int)Object for invokeExact.
+   */
+  private static final ClassValue<MethodHandle> GETTERS = new ClassValue<MethodHandle>() {
+    @Override
+    protected MethodHandle computeValue(final Class<?> type) {
+      if (!type.isArray())
+        throw new IllegalArgumentException(type.getName() + " is not an array");
+      return MethodHandles.arrayElementGetter(type).asType(GETTER_TYPE);
+    }
+  };
+
+  /**
+   * Registered once, by ObjectInvokeAdaptor, for Object[] and each primitive array class, so other types don't get
+   * these functions; every other reference array class resolves them via Object[], so none are pinned per class.
+   */
+  public static void registerAdapterFunctions() {
+    for (Class<?> arrayType : new Class<?>[]{Object[].class, boolean[].class, byte[].class, char[].class,
+                                             short[].class, int[].class, long[].class, float[].class,
+                                             double[].class})
+      TypeFunctions.registerFunctionClasses(arrayType,
+                                            ArrayFunctions.class);
+  }
+
+  /**
+   * @param array any array.
+   * @return the array length.
+   */
+  public static int length(@NonNull Object array) {
+    GETTERS.get(array.getClass()); // Validate
+    return Array.getLength(array);
+  }
+
+  /**
+   * @param array any array.
+   * @param index if negative, array length added.
+   * @return the element, boxed if primitive.
+   */
+  public static Object get(@NonNull Object array, int index) {
+    final int n = length(array);
+    if (index < 0)
+      index += n;
+    return get0(array, index);
+  }
+
+  /**
+   * @return the first element, or null if empty.
+   */
+  public static Object first(@NonNull Object array) {
+    return 0 == length(array) ? null : get0(array, 0);
+  }
+
+  /**
+   * @return the last element, or null if empty.
+   */
+  public static Object last(@NonNull Object array) {
+    final int n = length(array);
+    return 0 == n ? null : get0(array, n - 1);
+  }
+
+  /**
+   * @param start if negative, array length added.
+   * @return a read-only view, from start to the end of the array.
+   */
+  public static List<Object> slice(@NonNull Object array, int start) {
+    return slice(array, start, length(array));
+  }
+
+  /**
+   * @param start if negative, array length added.
+   * @param end   if negative, array length added; reduced to array length if more.
+   * @return a read-only view of the array range, which only boxes elements when accessed.
+   */
+  public static List<Object> slice(@NonNull Object array, int start, int end) {
+    final int n = length(array);
+    if (start < 0)
+      start = Math.max(0, start + n);
+    if (end < 0)
+      end += n;
+    else if (end > n)
+      end = n;
+    return start >= end
+           ? Collections.emptyList()
+           : new Slice(array, start, end - start);
+  }
+
+  private static Object get0(final Object array, final int index) {
+    try {
+      return GETTERS.get(array.getClass()).invokeExact(array, index);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private ArrayFunctions() {
+  }
+
+  /**
+   * A read-only List view of an array range.
+   */
+  private static final class Slice extends AbstractList<Object> implements RandomAccess {
+    private final Object array;
+    private final MethodHandle getter;
+    private final int offset;
+    private final int size;
+
+    private Slice(final Object array, final int offset, final int size) {
+      this.array = array;
+      this.getter = GETTERS.get(array.getClass());
+      this.offset = offset;
+      this.size = size;
+    }
+
+    @Override
+    public Object get(final int index) {
+      if (index < 0 || index >= size)
+        throw new IndexOutOfBoundsException("index=" + index + ", size=" + size);
+      try {
+        return getter.invokeExact(array, offset + index);
+      } catch (RuntimeException | Error e) {
+        throw e;
+      } catch (Throwable t) {
+        throw new IllegalStateException(t);
+      }
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package rwperrott.stringtemplate.v4;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.NonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * A Thread-safe, weight bounded, least-recently-used cache, with hit, miss, and eviction statistics.
+ * <br/>
+ * Pinned values are never evicted, e.g. types with registered function classes, which could not be rebuilt.  The
+ * value just put is never evicted by its own put, so the weight can exceed the maximum by it, until the next put.
+ * <br/>
+ * Only for package use, by TypeFunctions and ClassMembers.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author rwperrott
+ */
+final class BoundedCache<K, V> {
+  private final String name;
+  private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+  private final Object2IntOpenHashMap<K> weights = new Object2IntOpenHashMap<>();
+  private final ToIntFunction<V> weigher;
+  private final Predicate<V> pinned;
+  private long maximumWeight = Long.MAX_VALUE;
+  private long weight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * @param name    used by stats.
+   * @param weigher the cost of a value, fixed when put.
+   * @param pinned  tests if a value must never be evicted.
+   */
+  BoundedCache(final @NonNull String name,
+               final @NonNull ToIntFunction<V> weigher,
+               final @NonNull Predicate<V> pinned) {
+    this.name = name;
+    this.weigher = weigher;
+    this.pinned = pinned;
+  }
+
+  synchronized V get(final K key) {
+    final V v = map.get(key);
+    if (null == v)
+      misses++;
+    else
+      hits++;
+    return v;
+  }
+
+  synchronized void put(final K key, final @NonNull V value) {
+    final int w = Math.max(1, weigher.applyAsInt(value));
+    map.put(key, value);
+    weight += w - weights.put(key, w);
+    evict(key);
+  }
+
+  /**
+   * The mapping function may recursively use this cache, so must not use Map.computeIfAbsent.
+   */
+  synchronized V computeIfAbsent(final K key, final @NonNull Function<? super K, ? extends V> mappingFunction) {
+    V v = get(key);
+    if (null == v) {
+      v = mappingFunction.apply(key);
+      put(key, v);
+    }
+    return v;
+  }
+
+  /**
+   * Like computeIfAbsent, but applies action to the value, new or existing, before anything can be evicted, e.g. to
+   * pin it.
+   */
+  synchronized V computeIfAbsent(final K key,
+                                 final @NonNull Function<? super K, ? extends V> mappingFunction,
+                                 final @NonNull Consumer<? super V> action) {
+    V v = get(key);
+    if (null == v) {
+      v = mappingFunction.apply(key);
+      action.accept(v);
+      put(key, v);
+    } else
+      action.accept(v);
+    return v;
+  }
+
+  /**
+   * Recompute the weight of the value for key, e.g. after it grew.
+   */
+  synchronized void reweigh(final K key) {
+    final V v = map.get(key); // Not a use, so no stats or reordering.
+    if (null == v)
+      return;
+    final int w = Math.max(1, weigher.applyAsInt(v));
+    weight += w - weights.put(key, w);
+    evict(key);
+  }
+
+  synchronized void forEachValue(final @NonNull Consumer<? super V> action) {
+    map.values().forEach(action);
+  }
+
+  synchronized int size() {
+    return map.size();
+  }
+
+  synchronized void maximumWeight(final long maximumWeight) {
+    if (maximumWeight <= 0)
+      throw new IllegalArgumentException("maximumWeight=" + maximumWeight);
+    this.maximumWeight = maximumWeight;
+    evict(null);
+  }
+
+  synchronized CacheStats stats() {
+    return new CacheStats(name, map.size(), weight, maximumWeight, hits, misses, evictions);
+  }
+
+  // Evict least-recently-used, unpinned, values, except for the key just put, until within maximumWeight.
+  private void evict(final K except) {
+    final Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+    while (weight > maximumWeight && it.hasNext()) {
+      final Map.Entry<K, V> e = it.next();
+      if (pinned.test(e.getValue()) || (null != except && except.equals(e.getKey())))
+        continue;
+      it.remove();
+      weight -= weights.removeInt(e.getKey());
+      evictions++;
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package rwperrott.stringtemplate.v4;
+
+/**
+ * An immutable snapshot of the statistics of a bounded cache, e.g. TypeFunctions.stats() and ClassMembers.stats().
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class CacheStats {
+  public final String name;
+  public final int size;
+  public final long weight;
+  public final long maximumWeight;
+  public final long hits;
+  public final long misses;
+  public final long evictions;
+
+  CacheStats(final String name,
+             final int size,
+             final long weight,
+             final long maximumWeight,
+             final long hits,
+             final long misses,
+             final long evictions) {
+    this.name = name;
+    this.size = size;
+    this.weight = weight;
+    this.maximumWeight = maximumWeight;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+  }
+
+  public double hitRate() {
+    final long requests = hits + misses;
+    return 0 == requests ? 1d : (double) hits / requests;
+  }
+
+  @Override
+  public String toString() {
+    final ToStringBuilder t = new ToStringBuilder("CacheStats", false);
+    t.add("name", name);
+    t.add("size", size);
+    t.add("weight", weight);
+    t.add("maximumWeight", maximumWeight);
+    t.add("hits", hits);
+    t.add("misses", misses);
+    t.add("evictions", evictions);
+    t.complete();
+    return t.toString();
+  }
+}
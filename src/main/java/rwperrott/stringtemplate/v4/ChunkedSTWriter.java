@@ -0,0 +1,359 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * An STWriter, with the same output as AutoIndentWriter, which writes into fixed-size char chunks borrowed from a
+ * SoftPool, rather than a StringWriter, so a large output is never grown by doubling and copying.
+ * <br/>
+ * Runs of characters are copied in bulk, rather than one char at a time, and the concatenation of the pushed
+ * indentations is cached, so each indent is a single copy.
+ * <br/>
+ * Either:
+ * <ul>
+ *     <li>buffered, where the chunks are kept until writeTo hands them to a Writer, or toString copies them into a
+ *     String</li>
+ *     <li>streaming, to a sink Writer, where each full chunk is written, and reused, so only one chunk is used</li>
+ * </ul>
+ * Close to return the chunks to the pool. Not thread-safe, like AutoIndentWriter.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class ChunkedSTWriter implements STWriter, UncheckedCloseable {
+  public static final int CHUNK_SIZE = 8192;
+  static final SoftPool<char[]> CHUNKS =
+    SoftPool.<char[]>builder(() -> new char[CHUNK_SIZE])
+      .capacity(256)
+      .build();
+  private static final char[] SPACES = new char[64];
+
+  static {
+    Arrays.fill(SPACES, ' ');
+  }
+
+  /**
+   * Render st, with pooled chunks, which are returned before returning.
+   *
+   * @param locale   null for the default Locale.
+   * @param listener null for the STGroup listener.
+   */
+  public static String render(final @NonNull ST st, final Locale locale, final STErrorListener listener) {
+    try (ChunkedSTWriter w = new ChunkedSTWriter()) {
+      st.write(w,
+               null == locale ? Locale.getDefault() : locale,
+               null == listener ? st.groupThatCreatedThisInstance.getListener() : listener);
+      return w.toString();
+    }
+  }
+
+  public static String render(final @NonNull ST st) {
+    return render(st, null, null);
+  }
+
+  private final String newline;
+  private final Writer sink;
+  private final List<CloseableSupplier<char[]>> borrowed = new ArrayList<>();
+  private char[] chunk;
+  private int pos;
+  /**
+   * Filled chunks, only used when buffered.
+   */
+  private int filled;
+
+  /**
+   * The non-null pushed indentations, concatenated.
+   */
+  private char[] indentChars = new char[64];
+  /**
+   * The length of indentChars after each push, so a pop just restores the prior length.
+   */
+  private int[] indentEnds = new int[16];
+  private final List<String> indents = new ArrayList<>();
+  private int[] anchors = new int[10];
+  private int anchorsSp = -1;
+  private boolean atStartOfLine = true;
+  private int charPosition;
+  private int charIndex;
+  private int lineWidth = NO_WRAP;
+
+  public ChunkedSTWriter() {
+    this(null, System.getProperty("line.separator"));
+  }
+
+  public ChunkedSTWriter(final @NonNull String newline) {
+    this(null, newline);
+  }
+
+  /**
+   * @param sink null for buffered.
+   */
+  public ChunkedSTWriter(final Writer sink, final @NonNull String newline) {
+    this.sink = sink;
+    this.newline = newline;
+    indents.add(null); // Like AutoIndentWriter
+    chunk = borrow();
+  }
+
+  private char[] borrow() {
+    final CloseableSupplier<char[]> b = CHUNKS.get();
+    borrowed.add(b);
+    return b.get();
+  }
+
+  private char[] chunk() {
+    if (null == chunk)
+      throw new IllegalStateException("closed");
+    return chunk;
+  }
+
+  /**
+   * Make room in the current chunk, by writing it to the sink, or starting a new chunk.
+   */
+  private void next() throws IOException {
+    if (null != sink) {
+      sink.write(chunk, 0, pos);
+    } else {
+      filled++;
+      chunk = borrow();
+    }
+    pos = 0;
+  }
+
+  private void put(final String s, int start, final int end) throws IOException {
+    char[] c = chunk();
+    while (start < end) {
+      if (pos == c.length) {
+        next();
+        c = chunk;
+      }
+      final int n = Math.min(end - start, c.length - pos);
+      s.getChars(start, start + n, c, pos);
+      pos += n;
+      start += n;
+    }
+  }
+
+  private void put(final char[] s, int start, final int end) throws IOException {
+    char[] c = chunk();
+    while (start < end) {
+      if (pos == c.length) {
+        next();
+        c = chunk;
+      }
+      final int n = Math.min(end - start, c.length - pos);
+      System.arraycopy(s, start, c, pos, n);
+      pos += n;
+      start += n;
+    }
+  }
+
+  private void put(final char ch) throws IOException {
+    if (pos == chunk().length)
+      next();
+    chunk[pos++] = ch;
+  }
+
+  @Override
+  public void pushIndentation(final String indent) {
+    final int level = indents.size();
+    int end = indentEnds[level - 1];
+    if (null != indent) {
+      final int n = end + indent.length();
+      if (n > indentChars.length)
+        indentChars = Arrays.copyOf(indentChars, Math.max(n, indentChars.length * 2));
+      indent.getChars(0, indent.length(), indentChars, end);
+      end = n;
+    }
+    if (level == indentEnds.length)
+      indentEnds = Arrays.copyOf(indentEnds, level * 2);
+    indentEnds[level] = end;
+    indents.add(indent);
+  }
+
+  @Override
+  public String popIndentation() {
+    return indents.remove(indents.size() - 1);
+  }
+
+  @Override
+  public void pushAnchorPoint() {
+    if (anchorsSp + 1 >= anchors.length)
+      anchors = Arrays.copyOf(anchors, anchors.length * 2);
+    anchors[++anchorsSp] = charPosition;
+  }
+
+  @Override
+  public void popAnchorPoint() {
+    anchorsSp--;
+  }
+
+  @Override
+  public void setLineWidth(final int lineWidth) {
+    this.lineWidth = lineWidth;
+  }
+
+  @Override
+  public int index() {
+    return charIndex;
+  }
+
+  @Override
+  public int write(final String str) throws IOException {
+    int n = 0;
+    final int nll = newline.length();
+    final int sl = str.length();
+    int start = 0;
+    for (int i = 0; i <= sl; i++) {
+      final char c = i == sl ? '\n' : str.charAt(i);
+      if (c != '\r' && c != '\n')
+        continue;
+      // Flush the run of normal characters before the line break.
+      if (start < i) {
+        if (atStartOfLine) {
+          n += indent();
+          atStartOfLine = false;
+        }
+        final int len = i - start;
+        put(str, start, i);
+        n += len;
+        charPosition += len;
+        charIndex += len;
+      }
+      start = i + 1;
+      if (c == '\n' && i < sl) {
+        atStartOfLine = true;
+        put(newline, 0, nll);
+        n += nll;
+        charIndex += nll;
+        charPosition = n - nll; // Odd, but the same as AutoIndentWriter, so wrapping is the same.
+      }
+    }
+    return n;
+  }
+
+  @Override
+  public int write(final String str, final String wrap) throws IOException {
+    final int n = writeWrap(wrap);
+    return n + write(str);
+  }
+
+  @Override
+  public int writeWrap(final String wrap) throws IOException {
+    int n = 0;
+    if (lineWidth != NO_WRAP && null != wrap && !atStartOfLine && charPosition >= lineWidth) {
+      for (int i = 0, sl = wrap.length(); i < sl; i++) {
+        final char c = wrap.charAt(i);
+        if (c == '\r')
+          continue;
+        if (c == '\n') {
+          put(newline, 0, newline.length());
+          n += newline.length();
+          charPosition = 0;
+          charIndex += newline.length();
+          n += indent();
+        } else {
+          n++;
+          put(c);
+          charPosition++;
+          charIndex++;
+        }
+      }
+    }
+    return n;
+  }
+
+  @Override
+  public int writeSeparator(final String str) throws IOException {
+    return write(str);
+  }
+
+  private int indent() throws IOException {
+    final int width = indentEnds[indents.size() - 1];
+    put(indentChars, 0, width);
+    int n = width;
+    if (anchorsSp >= 0 && anchors[anchorsSp] > width) {
+      for (int remaining = anchors[anchorsSp] - width; remaining > 0; ) {
+        final int k = Math.min(remaining, SPACES.length);
+        put(SPACES, 0, k);
+        remaining -= k;
+      }
+      n = anchors[anchorsSp];
+    }
+    charPosition += n;
+    charIndex += n;
+    return n;
+  }
+
+  /**
+   * @return the number of chars buffered, or not yet written to the sink.
+   */
+  public int length() {
+    return filled * CHUNK_SIZE + pos;
+  }
+
+  /**
+   * Write the buffered chunks to out, without copying them; only for buffered mode, so use flush when streaming.
+   *
+   * @throws IllegalStateException if streaming, because the chars would be written to the sink again.
+   */
+  public void writeTo(final @NonNull Writer out) throws IOException {
+    if (null != sink)
+      throw new IllegalStateException("streaming to a sink, so flush instead");
+    chunk();
+    for (int i = 0; i < filled; i++)
+      out.write(borrowed.get(i).get(), 0, CHUNK_SIZE);
+    out.write(chunk, 0, pos);
+  }
+
+  public void flush() throws IOException {
+    if (null == sink)
+      return;
+    chunk();
+    sink.write(chunk, 0, pos);
+    pos = 0;
+    sink.flush();
+  }
+
+  /**
+   * @return the buffered chars, via an exactly presized StringBuilder, so never grown.
+   */
+  @Override
+  public String toString() {
+    if (null == chunk)
+      return "";
+    final StringBuilder sb = new StringBuilder(length());
+    for (int i = 0; i < filled; i++)
+      sb.append(borrowed.get(i).get(), 0, CHUNK_SIZE);
+    return sb.append(chunk, 0, pos).toString();
+  }
+
+  /**
+   * Flushes any sink, then returns the chunks to the pool; doesn't close the sink.
+   */
+  @Override
+  public void close() {
+    if (null == chunk)
+      return;
+    try {
+      flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      chunk = null;
+      borrowed.forEach(CloseableSupplier::close);
+      borrowed.clear();
+    }
+  }
+}
@@ -12,7 +12,6 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
 import java.util.Map;
 
 import static rwperrott.stringtemplate.v4.TypeConverter.box;
@@ -27,20 +26,40 @@ import static rwperrott.stringtemplate.v4.TypeConverter.box;
 public final class ClassMembers {
   /*
    * A cache to reduce the cost of lookup; even caches failures.
+   * Weighted by member name count; the preloaded classes are pinned.
    */
-  private static final Map<Class<?>, ClassMembers> cache = new HashMap<>();
+  private static final BoundedCache<Class<?>, ClassMembers> cache =
+    new BoundedCache<>("ClassMembers", ClassMembers::weight, ClassMembers::isPreloaded);
+  private static final Class<?>[] PRELOADED = {Class.class, Object.class, String.class, Number.class};
 
   static {
     // Preload some classes
-    Class<?>[] classes = {Class.class, Object.class, String.class, Number.class};
-    for (Class<?> cls : classes)
+    for (Class<?> cls : PRELOADED)
       cache.put(cls, new ClassMembers(cls));
   }
 
   public static ClassMembers of(final @NonNull Class<?> cls) {
-    synchronized (cache) {
-      return cache.computeIfAbsent(cls, ClassMembers::new);
-    }
+    return cache.computeIfAbsent(cls, ClassMembers::new);
+  }
+
+  /**
+   * Bound the memory used by the cache, e.g. for dynamic model classes from proxies, lambdas or generated classes.
+   *
+   * @param maximumWeight the maximum total member name count of the unpinned cached classes.
+   */
+  public static void maximumWeight(final long maximumWeight) {
+    cache.maximumWeight(maximumWeight);
+  }
+
+  public static CacheStats stats() {
+    return cache.stats();
+  }
+
+  private static boolean isPreloaded(ClassMembers cm) {
+    for (Class<?> cls : PRELOADED)
+      if (cls == cm.cls)
+        return true;
+    return false;
   }
 
   // Used by TypeConverter and TypeIndexMap
@@ -75,6 +94,10 @@ public final class ClassMembers {
     this.staticInvokers = new Object2ObjectLinkedOpenHashMap<>(staticInvokers0);
   }
 
+  private int weight() {
+    return instanceInvokers.size() + staticInvokers.size();
+  }
+
   void addTo(TypeFunctions.FunctionsMap toMap) {
     // Used to block adding of duplicate MemberInvokers.
     final ObjectSet<MemberInvoker> unique = new ObjectOpenHashSet<>();
@@ -133,9 +156,11 @@ public final class ClassMembers {
     final TypeIndexMap valueIndexOf = new TypeIndexMap();
     final TypeConverter[] typeConverters = TypeConverter.toTypeConverters(parameterTypes, valueIndexOf);
     if (null != typeConverters) {
+      // Unreflect first, so that an inaccessible method never leaves an empty list.
+      final MethodHandle mh = lookup.unreflect(method);
       staticInvokers0
         .computeIfAbsent(method.getName(), MemberInvokersImpl::new)
-        .accept(MemberInvoker.forStaticMethod(returnType, method, lookup.unreflect(method), typeConverters, valueIndexOf));
+        .accept(MemberInvoker.forStaticMethod(returnType, method, mh, typeConverters, valueIndexOf));
     }
   }
 
@@ -149,9 +174,10 @@ public final class ClassMembers {
       // Fix for match all, never convert, bug for equals(Object), which caused erroneous false results.
       if (typeConverters.length == 1 && parameterTypes[0] == Object.class && method.getName().equals("equals"))
         typeConverters[0] = TypeConverter.toTypeConverter(cls);
+      final MethodHandle mh = lookup.unreflect(method);
       instanceInvokers0
         .computeIfAbsent(method.getName(), MemberInvokersImpl::new)
-        .accept(MemberInvoker.forMethod(returnType, method, lookup.unreflect(method), typeConverters));
+        .accept(MemberInvoker.forMethod(returnType, method, mh, typeConverters));
     }
   }
 
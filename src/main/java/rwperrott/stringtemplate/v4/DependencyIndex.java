@@ -0,0 +1,243 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.compiler.FormalArgument;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records, for each output file, the templates and input files used to render it, with a fingerprint of each, so
+ * only the outputs with a changed dependency need to be rendered again, e.g. after one template in a large group
+ * file changes.
+ * <br/>
+ * Dependencies:
+ * <ul>
+ *     <li><code>template:</code> group source <code>#</code> template name, for each named template executed,
+ *     including sub-templates, and templates from imported groups, via a tracking Interpreter; fingerprinted by a
+ *     digest of its text and formal arguments, so editing one template only makes the outputs using it stale</li>
+ *     <li>an input file absolute path, fingerprinted by size and last modified time, so the content isn't read</li>
+ * </ul>
+ * Dictionaries aren't tracked.  Saved as a UTF-8 text file, between builds.  Thread-safe, for RenderScheduler.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class DependencyIndex {
+  private static final String HEADER = "# DependencyIndex 1";
+  private static final String OUTPUT = "output";
+  private static final String DEPENDENCY = "dependency";
+  private static final String TEMPLATE = "template:";
+  private static final String MISSING = "missing";
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  /**
+   * Weakly keyed, so a reloaded or unloaded template is forgotten.
+   */
+  private static final Map<CompiledST, String> FINGERPRINTS = Collections.synchronizedMap(new WeakHashMap<>());
+
+  /**
+   * Load a saved index, or return an empty one if file doesn't exist.
+   */
+  public static DependencyIndex load(final @NonNull Path file) throws IOException {
+    final DependencyIndex index = new DependencyIndex();
+    try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      final String header = r.readLine();
+      if (!HEADER.equals(header))
+        throw new IOException("not a DependencyIndex: " + file);
+      Map<String, String> dependencies = null;
+      for (String line; null != (line = r.readLine()); ) {
+        final String[] fields = line.split(" ", -1);
+        if (fields.length == 2 && OUTPUT.equals(fields[0])) {
+          dependencies = new HashMap<>();
+          index.outputs.put(decode(fields[1]), dependencies);
+        } else if (fields.length == 3 && DEPENDENCY.equals(fields[0]) && null != dependencies) {
+          dependencies.put(decode(fields[1]), decode(fields[2]));
+        } else
+          throw new IOException("invalid line in " + file + ": " + line);
+      }
+    } catch (NoSuchFileException e) {
+      return index;
+    }
+    return index;
+  }
+
+  private static String decode(final String s) throws UnsupportedEncodingException {
+    return URLDecoder.decode(s, "UTF-8");
+  }
+
+  private static String key(final Path output) {
+    return output.toAbsolutePath().normalize().toString();
+  }
+
+  private static String sourceName(final STGroup g) {
+    try {
+      return STGroupType.of(g).getSourceName(g);
+    } catch (IllegalArgumentException e) {
+      return g.getName(); // Not an STGroupType
+    }
+  }
+
+  private static String templateKey(final CompiledST impl) {
+    return TEMPLATE + sourceName(impl.nativeGroup) + '#' + impl.name;
+  }
+
+  /**
+   * @return the cached digest of impl, which never changes once compiled, so each template is only hashed once, not
+   * once per job.
+   */
+  private static String fingerprint(final CompiledST impl) {
+    return FINGERPRINTS.computeIfAbsent(impl, DependencyIndex::digest);
+  }
+
+  private static String digest(final CompiledST impl) {
+    final StringBuilder sb = new StringBuilder(String.valueOf(impl.template));
+    if (null != impl.formalArguments)
+      for (FormalArgument a : impl.formalArguments.values())
+        sb.append('\n').append(a);
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+      final char[] hex = new char[digest.length * 2];
+      for (int i = 0; i < digest.length; i++) {
+        hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+        hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+      }
+      return new String(hex);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // Every JVM has SHA-256
+    }
+  }
+
+  private static String fingerprint(final Path input) {
+    try {
+      return Files.size(input) + ":" + Files.getLastModifiedTime(input).toMillis();
+    } catch (IOException e) {
+      return MISSING;
+    }
+  }
+
+  /**
+   * Resolves the template named by key, as stGroup now would, including its imports, so a template since overridden
+   * by another group is found, and its different key makes the output stale.
+   *
+   * @return null if not found, or now resolved from a different group.
+   */
+  private static CompiledST findTemplate(final STGroup stGroup, final String key) {
+    final CompiledST impl = stGroup.lookupTemplate(key.substring(key.lastIndexOf('#') + 1));
+    return null != impl && key.equals(templateKey(impl)) ? impl : null;
+  }
+
+  /**
+   * Output key to dependency to fingerprint.
+   */
+  private final Map<String, Map<String, String>> outputs = new ConcurrentHashMap<>();
+
+  /**
+   * Not thread-safe for an STGroupDir, which loads templates lazily, so call serially.
+   *
+   * @return true if output doesn't exist, wasn't recorded, or any dependency changed.
+   */
+  public boolean isStale(final @NonNull Path output, final @NonNull STGroup stGroup) {
+    final Map<String, String> dependencies = outputs.get(key(output));
+    if (null == dependencies || !Files.exists(output))
+      return true;
+    for (Map.Entry<String, String> e : dependencies.entrySet()) {
+      final String d = e.getKey();
+      final String fingerprint;
+      if (d.startsWith(TEMPLATE)) {
+        final CompiledST impl = findTemplate(stGroup, d);
+        if (null == impl)
+          return true;
+        fingerprint = fingerprint(impl);
+      } else
+        fingerprint = fingerprint(Paths.get(d));
+      if (!fingerprint.equals(e.getValue()))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Record the dependencies of output, replacing any recorded before, fingerprinted now.
+   *
+   * @param templates the templates executed to render output.
+   * @param inputs    the input files read to render output, e.g. data files; may be null.
+   */
+  public void record(final @NonNull Path output,
+                     final @NonNull Collection<CompiledST> templates,
+                     final Collection<Path> inputs) {
+    final Map<String, String> dependencies = new LinkedHashMap<>();
+    for (CompiledST impl : templates)
+      dependencies.put(templateKey(impl), fingerprint(impl));
+    if (null != inputs)
+      for (Path input : inputs)
+        dependencies.put(key(input), fingerprint(input));
+    outputs.put(key(output), dependencies);
+  }
+
+  public void remove(final @NonNull Path output) {
+    outputs.remove(key(output));
+  }
+
+  /**
+   * @return the recorded dependencies of output, sorted, or empty if not recorded.
+   */
+  public Set<String> dependencies(final @NonNull Path output) {
+    final Map<String, String> dependencies = outputs.get(key(output));
+    return null == dependencies
+           ? Collections.emptySet()
+           : Collections.unmodifiableSet(new TreeSet<>(dependencies.keySet()));
+  }
+
+  /**
+   * Save via a temporary file, so a failed save doesn't leave a truncated index.
+   */
+  public void save(final @NonNull Path file) throws IOException {
+    final Path dir = file.toAbsolutePath().getParent();
+    Files.createDirectories(dir);
+    final Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try {
+      try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+        w.write(HEADER);
+        w.newLine();
+        for (String output : new TreeSet<>(outputs.keySet())) {
+          // Escaped straight into the Writer.
+          w.write(OUTPUT + ' ');
+          Escapers.escapeURL(output, w);
+          w.newLine();
+          for (Map.Entry<String, String> e : outputs.get(output).entrySet()) {
+            w.write(DEPENDENCY + ' ');
+            Escapers.escapeURL(e.getKey(), w);
+            w.write(' ');
+            Escapers.escapeURL(e.getValue(), w);
+            w.newLine();
+          }
+        }
+      }
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tmp);
+    }
+  }
+}
@@ -0,0 +1,237 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Streaming XML, HTML, and URL escapers, which append unescaped runs directly to an Appendable, e.g. a Writer, rather
+ * than building an intermediate String.
+ * <br/>
+ * The String versions, used by StringFunctions, and so by StringInvokeRenderer, start with an ASCII fast scan, and
+ * return the value unchanged when nothing needs escaping; otherwise they stream into a per-thread reused
+ * StringBuilder, so only the result String is allocated.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class Escapers {
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+  /**
+   * A larger builder isn't kept, so one huge value doesn't pin its memory to the thread.
+   */
+  private static final int MAX_KEPT = 1 << 16;
+  private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  /**
+   * Escapes &amp;, &lt;, &gt;, &quot;, and &apos;.
+   */
+  public static String escapeXML(final @NonNull String value) {
+    final int start = firstXML(value);
+    return start < 0 ? value : escape(value, start, Escapers::escapeXML);
+  }
+
+  public static void escapeXML(final @NonNull CharSequence value, final @NonNull Appendable out) throws IOException {
+    escapeXML(value, 0, out);
+  }
+
+  /**
+   * Like StringRenderer.escapeHTML, escapes &amp;, &lt;, and &gt; by name, and any code point outside ASCII
+   * printable, tab, CR, and LF by number.
+   */
+  public static String escapeHTML(final @NonNull String value) {
+    final int start = firstHTML(value);
+    return start < 0 ? value : escape(value, start, Escapers::escapeHTML);
+  }
+
+  public static void escapeHTML(final @NonNull CharSequence value, final @NonNull Appendable out) throws IOException {
+    escapeHTML(value, 0, out);
+  }
+
+  /**
+   * Like URLEncoder.encode(value, "UTF-8"), so a space is encoded as '+'.
+   */
+  public static String escapeURL(final @NonNull String value) {
+    final int start = firstURL(value);
+    return start < 0 ? value : escape(value, start, Escapers::escapeURL);
+  }
+
+  public static void escapeURL(final @NonNull CharSequence value, final @NonNull Appendable out) throws IOException {
+    escapeURL(value, 0, out);
+  }
+
+  private static int firstXML(final CharSequence cs) {
+    for (int i = 0, n = cs.length(); i < n; i++)
+      switch (cs.charAt(i)) {
+        case '&':
+        case '<':
+        case '>':
+        case '"':
+        case '\'':
+          return i;
+      }
+    return -1;
+  }
+
+  private static boolean isHTMLSafe(final char c) {
+    return c >= ' ' ? c < 0x7f && c != '&' && c != '<' && c != '>' : c == '\t' || c == '\n' || c == '\r';
+  }
+
+  private static int firstHTML(final CharSequence cs) {
+    for (int i = 0, n = cs.length(); i < n; i++)
+      if (!isHTMLSafe(cs.charAt(i)))
+        return i;
+    return -1;
+  }
+
+  private static boolean isURLSafe(final char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+           || c == '.' || c == '-' || c == '*' || c == '_';
+  }
+
+  private static int firstURL(final CharSequence cs) {
+    for (int i = 0, n = cs.length(); i < n; i++)
+      if (!isURLSafe(cs.charAt(i)))
+        return i;
+    return -1;
+  }
+
+  private static void escapeXML(final CharSequence cs, int start, final Appendable out) throws IOException {
+    final int n = cs.length();
+    int i = start;
+    for (; i < n; i++) {
+      final String entity;
+      switch (cs.charAt(i)) {
+        case '&':
+          entity = "&amp;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '"':
+          entity = "&quot;";
+          break;
+        case '\'':
+          entity = "&apos;";
+          break;
+        default:
+          continue;
+      }
+      out.append(cs, start, i).append(entity);
+      start = i + 1;
+    }
+    out.append(cs, start, n);
+  }
+
+  private static void escapeHTML(final CharSequence cs, int start, final Appendable out) throws IOException {
+    final int n = cs.length();
+    int i = start;
+    while (i < n) {
+      final char c = cs.charAt(i);
+      if (isHTMLSafe(c)) {
+        i++;
+        continue;
+      }
+      out.append(cs, start, i);
+      switch (c) {
+        case '&':
+          out.append("&amp;");
+          i++;
+          break;
+        case '<':
+          out.append("&lt;");
+          i++;
+          break;
+        case '>':
+          out.append("&gt;");
+          i++;
+          break;
+        default:
+          final int codePoint = Character.codePointAt(cs, i);
+          out.append("&#").append(Integer.toString(codePoint)).append(';');
+          i += Character.charCount(codePoint);
+      }
+      start = i;
+    }
+    out.append(cs, start, n);
+  }
+
+  private static void escapeURL(final CharSequence cs, int start, final Appendable out) throws IOException {
+    final int n = cs.length();
+    int i = start;
+    while (i < n) {
+      final char c = cs.charAt(i);
+      if (isURLSafe(c)) {
+        i++;
+        continue;
+      }
+      out.append(cs, start, i);
+      if (c == ' ') {
+        out.append('+');
+        i++;
+      } else {
+        int codePoint = c;
+        if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(cs.charAt(i + 1))) {
+          codePoint = Character.toCodePoint(c, cs.charAt(i + 1));
+          i += 2;
+        } else {
+          if (Character.isSurrogate(c))
+            codePoint = '?'; // Like URLEncoder, which replaces a malformed surrogate.
+          i++;
+        }
+        appendUTF8(codePoint, out);
+      }
+      start = i;
+    }
+    out.append(cs, start, n);
+  }
+
+  private static void appendUTF8(final int codePoint, final Appendable out) throws IOException {
+    if (codePoint < 0x80) {
+      appendHex(codePoint, out);
+    } else if (codePoint < 0x800) {
+      appendHex(0xC0 | (codePoint >> 6), out);
+      appendHex(0x80 | (codePoint & 0x3F), out);
+    } else if (codePoint < 0x10000) {
+      appendHex(0xE0 | (codePoint >> 12), out);
+      appendHex(0x80 | ((codePoint >> 6) & 0x3F), out);
+      appendHex(0x80 | (codePoint & 0x3F), out);
+    } else {
+      appendHex(0xF0 | (codePoint >> 18), out);
+      appendHex(0x80 | ((codePoint >> 12) & 0x3F), out);
+      appendHex(0x80 | ((codePoint >> 6) & 0x3F), out);
+      appendHex(0x80 | (codePoint & 0x3F), out);
+    }
+  }
+
+  private static void appendHex(final int b, final Appendable out) throws IOException {
+    out.append('%').append(HEX[b >> 4]).append(HEX[b & 0xF]);
+  }
+
+  private static String escape(final String value, final int start, final Escaper escaper) {
+    final StringBuilder sb = BUILDER.get();
+    sb.setLength(0);
+    try {
+      sb.append(value, 0, start);
+      escaper.escape(value, start, sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // Never thrown by StringBuilder.
+    }
+    final String result = sb.toString();
+    if (sb.capacity() > MAX_KEPT)
+      BUILDER.remove();
+    return result;
+  }
+
+  private Escapers() {
+  }
+
+  @FunctionalInterface
+  private interface Escaper {
+    void escape(CharSequence cs, int start, Appendable out) throws IOException;
+  }
+}
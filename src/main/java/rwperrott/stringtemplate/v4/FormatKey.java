@@ -0,0 +1,43 @@
+package rwperrott.stringtemplate.v4;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A cache key for a format compiled for a locale, by NumberInvokeRenderer and TemporalInvokeRenderer.
+ * <br/>
+ * Only for package use.
+ *
+ * @author rwperrott
+ */
+final class FormatKey {
+  final String format;
+  final Locale locale;
+  /**
+   * Distinguishes formats compiled differently for the same format and locale, e.g. by value kind.
+   */
+  final int variant;
+  private final int h;
+
+  FormatKey(final String format, final Locale locale, final int variant) {
+    this.format = format;
+    this.locale = locale;
+    this.variant = variant;
+    this.h = (31 * format.hashCode() + Objects.hashCode(locale)) * 31 + variant;
+  }
+
+  @Override
+  public int hashCode() {
+    return h;
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o)
+      return true;
+    if (!(o instanceof FormatKey))
+      return false;
+    final FormatKey that = (FormatKey) o;
+    return variant == that.variant && format.equals(that.format) && Objects.equals(locale, that.locale);
+  }
+}
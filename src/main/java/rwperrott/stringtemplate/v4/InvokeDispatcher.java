@@ -0,0 +1,99 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.*;
+import org.stringtemplate.v4.misc.STNoSuchPropertyException;
+
+/**
+ * A single ModelAdaptor, registered for Object, which replaces the separate ObjectInvokeAdaptor and
+ * NumberInvokeAdaptor registrations, so that the STGroup TypeRegistry has fewer entries to search.
+ * <br/>
+ * Caches, per concrete class, using ClassValue, the InvokeAdaptor to delegate to, and the ModelAdaptor resolved by
+ * the STGroup, for chained property resolution by AbstractInvokeAdaptor.  AttributeRenderers are still looked up by
+ * the Interpreter, so aren't cached.
+ * <br/>
+ * Resolutions are cached, so register any other ModelAdaptors first, or call clear().
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class InvokeDispatcher implements ModelAdaptor<Object> {
+  private static final ModelAdaptor<Object> OBJECT_ADAPTOR = new ObjectInvokeAdaptor();
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static final ModelAdaptor<Object> NUMBER_ADAPTOR = (ModelAdaptor) new NumberInvokeAdaptor();
+  /**
+   * The InvokeAdaptor used for each concrete class, when the STGroup has no more specific ModelAdaptor.
+   */
+  private static final ClassValue<ModelAdaptor<Object>> INVOKE_ADAPTORS = new ClassValue<ModelAdaptor<Object>>() {
+    @Override
+    protected ModelAdaptor<Object> computeValue(final Class<?> type) {
+      return Number.class.isAssignableFrom(type) ? NUMBER_ADAPTOR : OBJECT_ADAPTOR;
+    }
+  };
+
+  public static void register(final @NonNull STGroup stGroup) {
+    final InvokeDispatcher d = new InvokeDispatcher(stGroup);
+    stGroup.registerModelAdaptor(Object.class, d);
+    // Registered now, so never cached as resolving to this.
+    AbstractInvokeAdaptor.registerArgsAdapterModelAdapter(stGroup);
+  }
+
+  /**
+   * Used by AbstractInvokeAdaptor, to resolve chained properties without a TypeRegistry search per property.
+   *
+   * @return the cached ModelAdaptor, if the STGroup has an InvokeDispatcher, else the STGroup ModelAdaptor.
+   */
+  @SuppressWarnings("unchecked")
+  static ModelAdaptor<Object> getModelAdaptor(final @NonNull STGroup stGroup, final @NonNull Class<?> type) {
+    final ModelAdaptor<?> ma = stGroup.getModelAdaptor(Object.class);
+    return ma instanceof InvokeDispatcher
+           ? ((InvokeDispatcher) ma).modelAdaptor(type)
+           : (ModelAdaptor<Object>) stGroup.getModelAdaptor(type);
+  }
+
+  private final STGroup stGroup;
+  private volatile Resolved resolved = new Resolved();
+
+  private InvokeDispatcher(final STGroup stGroup) {
+    this.stGroup = stGroup;
+  }
+
+  @Override
+  public Object getProperty(final Interpreter interpreter,
+                            final ST self,
+                            final Object model,
+                            final Object property,
+                            final String propertyName) throws STNoSuchPropertyException {
+    return INVOKE_ADAPTORS.get(model.getClass()).getProperty(interpreter, self, model, property, propertyName);
+  }
+
+  /**
+   * @return the ModelAdaptor for type, including this group's more specific ModelAdaptors.
+   */
+  public ModelAdaptor<Object> modelAdaptor(final @NonNull Class<?> type) {
+    return resolved.modelAdaptors.get(type);
+  }
+
+  /**
+   * Discard the cached resolutions, e.g. after registering another ModelAdaptor.
+   */
+  public void clear() {
+    resolved = new Resolved();
+  }
+
+  /**
+   * Replaced by clear, because a ClassValue can't be cleared for all classes.
+   */
+  private final class Resolved {
+    @SuppressWarnings("unchecked")
+    private final ClassValue<ModelAdaptor<Object>> modelAdaptors = new ClassValue<ModelAdaptor<Object>>() {
+      @Override
+      protected ModelAdaptor<Object> computeValue(final Class<?> type) {
+        final ModelAdaptor<?> ma = stGroup.getModelAdaptor(type);
+        return ma == InvokeDispatcher.this
+               ? INVOKE_ADAPTORS.get(type)
+               : (ModelAdaptor<Object>) ma;
+      }
+    };
+  }
+}
@@ -0,0 +1,152 @@
+package rwperrott.stringtemplate.v4;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the elements of a top-level JSON array, via JsonParser, so a multi-gigabyte export can be templated with
+ * the heap bounded by the size of one element.
+ * <br/>
+ * Each element is read as a small tree, unwrapped by JsonNodeInvokeAdaptor.toValue, and is garbage once the template
+ * moves on, so register JsonNodeInvokeAdaptor on the STGroup.
+ * <br/>
+ * Only bounded if the output is written as rendered, e.g. by ST.write to a Writer, or by renderEach, not by
+ * ST.render, which builds a String.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class JsonElements {
+  /**
+   * @return a single-pass Iterable, for a template to iterate, which closes the parser when exhausted.
+   */
+  public static Iterable<Object> of(final @NonNull ObjectMapper mapper, final @NonNull InputStream in) throws IOException {
+    return of(mapper.getFactory().createParser(in));
+  }
+
+  /**
+   * @param parser must have an ObjectCodec, e.g. be created by an ObjectMapper, to read each element as a tree.
+   * @return a single-pass Iterable, for a template to iterate, which closes the parser when exhausted.
+   * @throws IOException when the parser fails, or the document isn't an array, after closing the parser.
+   */
+  public static Iterable<Object> of(final @NonNull JsonParser parser) throws IOException {
+    try {
+      if (null == parser.getCodec())
+        throw new IllegalArgumentException("parser has no ObjectCodec");
+      final JsonToken first = null == parser.currentToken() ? parser.nextToken() : parser.currentToken();
+      if (JsonToken.START_ARRAY != first)
+        throw new IOException("expected a JSON array, not " + first);
+    } catch (IOException | RuntimeException e) {
+      try {
+        parser.close();
+      } catch (IOException ce) {
+        e.addSuppressed(ce);
+      }
+      throw e;
+    }
+    return LazyViews.once(new Elements(parser), parser);
+  }
+
+  /**
+   * Renders template once per element, with the element as attribute, writing each to out before the next element
+   * is parsed.
+   * <br/>
+   * Closes elements, if AutoCloseable, e.g. from of, even if a render fails, so the parser, and its InputStream, are
+   * never left open; a close failure after a failed render is ignored, in favour of the render failure.
+   *
+   * @param listener null for the STGroup listener.
+   * @return the number of elements rendered.
+   */
+  public static int renderEach(final @NonNull STGroup stGroup,
+                               final @NonNull String templateName,
+                               final @NonNull String attributeName,
+                               final @NonNull Iterable<Object> elements,
+                               final @NonNull Writer out,
+                               final STErrorListener listener) throws IOException {
+    final ST st = stGroup.getInstanceOf(templateName);
+    if (null == st)
+      throw new IllegalArgumentException("no template \"" + templateName + "\"");
+    final STWriter w = new AutoIndentWriter(out);
+    int n = 0;
+    boolean completed = false;
+    try {
+      for (Object e : elements) {
+        // Reused, to avoid creating an ST per element.
+        st.remove(attributeName);
+        st.add(attributeName, e);
+        if (null == listener)
+          st.write(w);
+        else
+          st.write(w, listener);
+        n++;
+      }
+      completed = true;
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      st.remove(attributeName);
+      if (elements instanceof AutoCloseable)
+        try {
+          ((AutoCloseable) elements).close();
+        } catch (Exception e) {
+          if (completed)
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+    out.flush();
+    return n;
+  }
+
+  private JsonElements() {
+  }
+
+  private static final class Elements implements Iterator<Object> {
+    private final JsonParser parser;
+    private JsonToken token;
+
+    private Elements(final JsonParser parser) {
+      this.parser = parser;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (null == token)
+        try {
+          token = parser.nextToken();
+          if (null == token)
+            throw new IOException("unexpected end of JSON array");
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      return JsonToken.END_ARRAY != token;
+    }
+
+    @Override
+    public Object next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      try {
+        final JsonNode node = parser.readValueAsTree();
+        token = null;
+        return JsonNodeInvokeAdaptor.toValue(node);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
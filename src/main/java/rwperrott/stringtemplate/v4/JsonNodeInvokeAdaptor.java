@@ -0,0 +1,222 @@
+package rwperrott.stringtemplate.v4;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import lombok.NonNull;
+import org.stringtemplate.v4.Interpreter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Reads a Jackson JsonNode tree directly, without a conversion pass to Maps and Lists, which doubles memory.
+ * <br/>
+ * Property values are unwrapped by toValue:
+ * <ul>
+ *     <li>scalars as Number, String, or Boolean, so NumberInvokeAdaptor and StringInvokeAdaptor functions keep
+ *     working, and ST tests Booleans as usual</li>
+ *     <li>objects as read-only Map views, for ST's Map support, including iteration of keys</li>
+ *     <li>arrays as read-only List views, of unwrapped elements, because ST iterates any JsonNode, so would render
+ *     scalar elements as empty</li>
+ * </ul>
+ * Properties of a JsonNode, or of an array view, are resolved in this order:
+ * <ul>
+ *     <li>an object field, which hides any JsonNode member with the same name</li>
+ *     <li>an array index, negative indexes wrap from the end, e.g. <code>items.("-1")</code></li>
+ *     <li>a member, e.g. <code>size</code></li>
+ *     <li>null, like a missing Map key</li>
+ * </ul>
+ * Add toValue(root) as the attribute, if the root may be an array.
+ * <br/>
+ * Not registered by STUtils.registerAllUtilsExtensions, because jackson-databind is an optional dependency.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class JsonNodeInvokeAdaptor extends AbstractInvokeAdaptor<Object> {
+  private static final int NOT_INDEX = Integer.MIN_VALUE;
+
+  public static void register(final @NonNull STGroup stGroup) {
+    final JsonNodeInvokeAdaptor a = new JsonNodeInvokeAdaptor();
+    stGroup.registerModelAdaptor(JsonNode.class, a);
+    stGroup.registerModelAdaptor(ArrayView.class, a);
+  }
+
+  /**
+   * @return a Number, String, Boolean, byte[], or POJO for a scalar, null for a null or missing node, a read-only
+   * Map view for an object, or a read-only List view for an array.
+   */
+  public static Object toValue(final JsonNode node) {
+    if (null == node)
+      return null;
+    switch (node.getNodeType()) {
+      case NUMBER:
+        return node.numberValue();
+      case STRING:
+        return node.textValue();
+      case BOOLEAN:
+        return node.booleanValue();
+      case BINARY:
+        try {
+          return node.binaryValue();
+        } catch (IOException e) {
+          return node;
+        }
+      case POJO:
+        return ((POJONode) node).getPojo();
+      case NULL:
+      case MISSING:
+        return null;
+      case OBJECT:
+        return new ObjectView(node);
+      case ARRAY:
+        return new ArrayView(node);
+      default:
+        return node;
+    }
+  }
+
+  public JsonNodeInvokeAdaptor() {
+    super(true); // Probably not a good idea to access non-public Members of a JsonNode.
+  }
+
+  @Override
+  protected Object getValue(final Interpreter interpreter,
+                            final ST self,
+                            final Object model,
+                            final Object property,
+                            final String propertyName) {
+    final JsonNode node = model instanceof ArrayView ? ((ArrayView) model).node : (JsonNode) model;
+    if (node.isValueNode()) {
+      // Delegated, so Number and String functions keep working.
+      final Object value = toValue(node);
+      if (null == value || value instanceof JsonNode)
+        return NO_VALUE;
+      return InvokeDispatcher.getModelAdaptor(self.groupThatCreatedThisInstance, value.getClass())
+        .getProperty(interpreter, self, value, property, propertyName);
+    }
+    if (node.isObject()) {
+      final JsonNode field = node.get(propertyName);
+      if (null != field)
+        return toValue(field);
+    } else if (node.isArray()) {
+      int index = toIndex(propertyName);
+      if (NOT_INDEX != index) {
+        if (index < 0)
+          index += node.size();
+        return toValue(node.get(index)); // null if out of range
+      }
+    }
+    // Missing, like a Map key, unless a member.
+    return MemberInvokers.NONE == TypeFunctions.get(model.getClass(), propertyName) ? null : NO_VALUE;
+  }
+
+  /**
+   * @return the parsed index, or NOT_INDEX, without the cost of a NumberFormatException.
+   */
+  private static int toIndex(final String s) {
+    final int n = s.length();
+    int i = 0;
+    final boolean negative = n > 1 && s.charAt(0) == '-';
+    if (negative)
+      i++;
+    if (i == n || n - i > 9) // Too short, or maybe too long for an int.
+      return NOT_INDEX;
+    int index = 0;
+    for (; i < n; i++) {
+      final char c = s.charAt(i);
+      if (c < '0' || c > '9')
+        return NOT_INDEX;
+      index = index * 10 + (c - '0');
+    }
+    return negative ? -index : index;
+  }
+
+  /**
+   * A read-only List view of an array node, which only unwraps elements when accessed.
+   */
+  private static final class ArrayView extends AbstractList<Object> implements RandomAccess {
+    private final JsonNode node;
+
+    private ArrayView(final JsonNode node) {
+      this.node = node;
+    }
+
+    @Override
+    public Object get(final int index) {
+      if (index < 0 || index >= node.size())
+        throw new IndexOutOfBoundsException("index=" + index + ", size=" + node.size());
+      return toValue(node.get(index));
+    }
+
+    @Override
+    public int size() {
+      return node.size();
+    }
+
+    @Override
+    public String toString() {
+      return node.toString();
+    }
+  }
+
+  /**
+   * A read-only Map view of an object node, which only unwraps field values when accessed.
+   */
+  private static final class ObjectView extends AbstractMap<String, Object> {
+    private final JsonNode node;
+
+    private ObjectView(final JsonNode node) {
+      this.node = node;
+    }
+
+    @Override
+    public Object get(final Object key) {
+      return key instanceof String ? toValue(node.get((String) key)) : null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+      return key instanceof String && node.has((String) key);
+    }
+
+    @Override
+    public int size() {
+      return node.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<Entry<String, Object>>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          final Iterator<Map.Entry<String, JsonNode>> it = node.fields();
+          return new Iterator<Entry<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              final Map.Entry<String, JsonNode> e = it.next();
+              return new SimpleImmutableEntry<>(e.getKey(), toValue(e.getValue()));
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return node.size();
+        }
+      };
+    }
+
+    @Override
+    public String toString() {
+      return node.toString();
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Lazy, read-only, Collection views over an Iterable, so that ObjectFunctions conversions don't copy large model
+ * collections for every render.
+ * <br/>
+ * Views reflect the current content of the source, at each iteration.
+ * <br/>
+ * Only for package use.
+ *
+ * @author rwperrott
+ */
+final class LazyViews {
+  /**
+   * A List view, which iterates source directly, without a copy, so get iterates up to the index, and size of a
+   * non-Collection source counts the elements; ST only iterates.
+   */
+  static <T> List<T> list(final @NonNull Iterable<T> source) {
+    return new IterableList<>(source);
+  }
+
+  /**
+   * A Set view, which de-duplicates source on iteration, in source order.
+   */
+  static <T> Set<T> distinct(final @NonNull Iterable<T> source) {
+    return new DistinctSet<>(source);
+  }
+
+  /**
+   * A single-pass Iterable, for an Iterator, Spliterator or Stream source, consumed as iterated, so a template
+   * over a cursor runs in constant memory.
+   * <br/>
+   * Every iterator() call returns the same Iterator, so an ST <code>if</code> test, which calls hasNext, doesn't
+   * lose any elements, and a later iteration resumes where a prior one stopped.
+   *
+   * @param resource closed, if not null, when the source is exhausted, or the Iterable is closed, e.g. a Stream over
+   *                 a database cursor.
+   * @return an AutoCloseable Iterable, so a consumer which stops early can close resource.
+   */
+  static <T> Iterable<T> once(final @NonNull Iterator<T> source, final AutoCloseable resource) {
+    return new Once<>(source, resource);
+  }
+
+  /**
+   * @return true if a once Iterable, so can't be iterated more than once.
+   */
+  static boolean isOnce(final Iterable<?> iterable) {
+    return iterable instanceof Once;
+  }
+
+  /**
+   * Blocks remove, so views are read-only.
+   */
+  static <T> Iterator<T> readOnly(final Iterator<T> it) {
+    return new Iterator<T>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public T next() {
+        return it.next();
+      }
+    };
+  }
+
+  private LazyViews() {
+  }
+
+  private static final class Once<T> implements Iterable<T>, Iterator<T>, AutoCloseable {
+    private final Iterator<T> source;
+    private AutoCloseable resource;
+
+    private Once(final Iterator<T> source, final AutoCloseable resource) {
+      this.source = source;
+      this.resource = resource;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (source.hasNext())
+        return true;
+      close();
+      return false;
+    }
+
+    @Override
+    public T next() {
+      return source.next();
+    }
+
+    @Override
+    public void close() {
+      final AutoCloseable c = resource;
+      if (null != c) {
+        resource = null;
+        try {
+          c.close();
+        } catch (RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    }
+  }
+
+  private static final class IterableList<T> extends AbstractList<T> {
+    private final Iterable<T> source;
+
+    private IterableList(final Iterable<T> source) {
+      this.source = source;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      return readOnly(source.iterator());
+    }
+
+    @Override
+    public T get(final int index) {
+      if (index >= 0) {
+        int i = 0;
+        for (T e : source)
+          if (i++ == index)
+            return e;
+      }
+      throw new IndexOutOfBoundsException("index " + index);
+    }
+
+    @Override
+    public int size() {
+      if (source instanceof Collection)
+        return ((Collection<?>) source).size();
+      int n = 0;
+      for (Iterator<T> it = source.iterator(); it.hasNext(); it.next())
+        n++;
+      return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return !source.iterator().hasNext();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      return source instanceof Collection
+             ? ((Collection<?>) source).contains(o)
+             : super.contains(o);
+    }
+  }
+
+  private static final class DistinctSet<T> extends AbstractSet<T> {
+    private final Iterable<T> source;
+
+    private DistinctSet(final Iterable<T> source) {
+      this.source = source;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+      final Iterator<T> it = source.iterator();
+      final Set<T> seen = new HashSet<>();
+      return new Iterator<T>() {
+        private T next;
+        private boolean ready;
+
+        @Override
+        public boolean hasNext() {
+          while (!ready && it.hasNext()) {
+            final T e = it.next();
+            ready = seen.add(e);
+            next = e;
+          }
+          return ready;
+        }
+
+        @Override
+        public T next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          ready = false;
+          return next;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      int n = 0;
+      for (Iterator<T> it = iterator(); it.hasNext(); it.next())
+        n++;
+      return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return !source.iterator().hasNext();
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      return source instanceof Collection
+             ? ((Collection<?>) source).contains(o)
+             : super.contains(o);
+    }
+  }
+}
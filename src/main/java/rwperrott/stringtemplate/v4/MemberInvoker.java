@@ -3,6 +3,8 @@ package rwperrott.stringtemplate.v4;
 import lombok.NonNull;
 
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.*;
 import java.util.Arrays;
 import java.util.List;
@@ -38,7 +40,7 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
                                  final Method member,
                                  final MethodHandle methodHandle,
                                  final TypeConverter[] typeAdapters) {
-    return new ForMethod(boxedReturnType, member, methodHandle, typeAdapters);
+    return new ForMethod(boxedReturnType, member, methodHandle, TypeConverter.intern(typeAdapters));
   }
 
   static MemberInvoker forStaticMethod(final Class<?> boxedReturnType,
@@ -46,7 +48,7 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
                                        final MethodHandle methodHandle,
                                        final TypeConverter[] typeAdapters,
                                        final TypeIndexMap valueIndexOf) {
-    return new ForStaticMethod(boxedReturnType, member, methodHandle, typeAdapters, valueIndexOf);
+    return new ForStaticMethod(boxedReturnType, member, methodHandle, TypeConverter.intern(typeAdapters), valueIndexOf);
   }
 
   static MemberInvoker forConstructor(final Class<?> boxedReturnType,
@@ -54,7 +56,20 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
                                       final MethodHandle methodHandle,
                                       final TypeConverter[] typeAdapters,
                                       final TypeIndexMap valueIndexOf) {
-    return new ForConstructor(boxedReturnType, member, methodHandle, typeAdapters, valueIndexOf);
+    return new ForConstructor(boxedReturnType, member, methodHandle, TypeConverter.intern(typeAdapters), valueIndexOf);
+  }
+
+  /**
+   * Used by ForStaticMethod and ForConstructor to create an interned signature, without the value parameter.
+   */
+  static TypeConverter[] withoutValueIndex(final TypeConverter[] from, final int valueIndex) {
+    final int fromN = from.length;
+    final TypeConverter[] to = new TypeConverter[fromN - 1];
+    for (int fromI = 0, toI = 0; fromI < fromN; fromI++) {
+      if (fromI != valueIndex)
+        to[toI++] = from[fromI];
+    }
+    return TypeConverter.intern(to);
   }
 
   TypeConverter[] typeConverters();
@@ -74,6 +89,14 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
 
   Object invoke(final Object value, final List<Object> args) throws Throwable;
 
+  /**
+   * For callers which cache a resolved MemberInvoker, e.g. StringInvokeRenderer, to avoid the args List and
+   * invokeWithArguments costs of invoke.
+   *
+   * @return a MethodHandle taking the value, then the typeConverters parameters, without conversion.
+   */
+  MethodHandle valueFirstHandle();
+
   interface WithValueType extends MemberInvoker {
     MemberInvoker forValueType(final Class<?> cls);
   }
@@ -121,6 +144,14 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
       return TypeConverter.convert(args, typeConverters(), extrasLen);
     }
 
+    @Override
+    public final MethodHandle valueFirstHandle() {
+      // Like invoke, the value is ignored for static members.
+      return isStatic()
+             ? MethodHandles.dropArguments(methodHandle, 0, Object.class)
+             : methodHandle;
+    }
+
     /**
      * used by ForValueType::invoke
      */
@@ -220,6 +251,21 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
       return parent.invoke(valueIndex, value, args);
     }
 
+    @Override
+    public final MethodHandle valueFirstHandle() {
+      // Move the value parameter to the front.
+      final MethodHandle mh = parent.methodHandle;
+      final MethodType type = mh.type();
+      final int n = type.parameterCount();
+      final int[] reorder = new int[n];
+      for (int i = 0; i < n; i++)
+        reorder[i] = i == valueIndex ? 0 : (i < valueIndex ? i + 1 : i);
+      final MethodType valueFirst = type
+        .dropParameterTypes(valueIndex, valueIndex + 1)
+        .insertParameterTypes(0, type.parameterType(valueIndex));
+      return MethodHandles.permuteArguments(mh, valueFirst, reorder);
+    }
+
     @Override
     public final int hashCode() {
       return h;
@@ -335,6 +381,10 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
 
   class ForStaticMethod extends ForMethod implements WithValueType {
     final TypeIndexMap valueIndexOf;
+    /**
+     * Lazily filled views, keyed by valueIndex, so shared by all the value types mapped to the same index.
+     */
+    private ForValueType[] forValueIndex;
 
     private ForStaticMethod(final Class<?> boxedReturnType,
                             final Method method,
@@ -345,22 +395,19 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
       this.valueIndexOf = requireNonNull(valueIndexOf, "typeIndexOf");
     }
 
-    public MemberInvoker forValueType(final Class<?> cls) {
+    public synchronized MemberInvoker forValueType(final Class<?> cls) {
       if (null == valueIndexOf)
         return null;
       final int valueIndex = valueIndexOf.getInt(cls);
       if (-1 == valueIndex)
         return null;
       //
-      final TypeConverter[] from = ForStaticMethod.this.typeConverters;
-      final int fromN = from.length;
-      final TypeConverter[] to = new TypeConverter[fromN - 1];
-      for (int fromI = 0, toI = 0; fromI < fromN; fromI++) {
-        if (fromI == valueIndex)
-          continue;
-        to[toI++] = from[fromI];
-      }
-      return new ForValueType(this, valueIndex, to);
+      if (null == forValueIndex)
+        forValueIndex = new ForValueType[typeConverters.length];
+      ForValueType mi = forValueIndex[valueIndex];
+      if (null == mi)
+        forValueIndex[valueIndex] = mi = new ForValueType(this, valueIndex, withoutValueIndex(typeConverters, valueIndex));
+      return mi;
     }
 
     @Override
@@ -397,6 +444,10 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
      */
     protected final TypeConverter[] typeConverters;
     final TypeIndexMap valueIndexOf;
+    /**
+     * Lazily filled views, keyed by valueIndex, so shared by all the value types mapped to the same index.
+     */
+    private ForValueType[] forValueIndex;
 
     private ForConstructor(final Class<?> cls,
                            final Constructor<?> constructor,
@@ -433,20 +484,19 @@ interface MemberInvoker extends Comparable<MemberInvoker> {
       return mh.invokeWithArguments(args);
     }
 
-    public MemberInvoker forValueType(final Class<?> cls) {
+    public synchronized MemberInvoker forValueType(final Class<?> cls) {
       if (null == valueIndexOf)
         return null;
       final int valueIndex = valueIndexOf.getInt(cls);
       if (-1 == valueIndex)
         return null;
       //
-      final TypeConverter[] from = ForConstructor.this.typeConverters;
-      final int fromN = from.length;
-      final TypeConverter[] to = new TypeConverter[fromN - 1];
-      for (int fromI = 0, toI = 0; fromI < fromN; fromI++) {
-        if (fromI != valueIndex) to[toI++] = from[fromI];
-      }
-      return new ForValueType(this, valueIndex, to);
+      if (null == forValueIndex)
+        forValueIndex = new ForValueType[typeConverters.length];
+      ForValueType mi = forValueIndex[valueIndex];
+      if (null == mi)
+        forValueIndex[valueIndex] = mi = new ForValueType(this, valueIndex, withoutValueIndex(typeConverters, valueIndex));
+      return mi;
     }
 
     @Override
@@ -35,6 +35,7 @@ final class MemberInvokersImpl implements MemberInvokers, Consumer<MemberInvoker
   @Override
   public void accept(final MemberInvoker memberInvoker) {
     list.add(memberInvoker);
+    unindex(); // Re-index by next sort
   }
 
   public void ensureCapacity(int minCapacity) {
@@ -0,0 +1,176 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.AttributeRenderer;
+import org.stringtemplate.v4.STGroup;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Formatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * A faster NumberRenderer, which compiles each (format, locale) pair once, and caches it.
+ * <br/>
+ * Formats:
+ * <ul>
+ *     <li>a single <code>%d</code>, <code>%x</code>, or <code>%X</code> conversion, with an optional <code>0</code>
+ *     flag and width, and optional literal prefix and suffix, e.g. <code>0x%04X</code>, is done directly for Byte,
+ *     Short, Integer, and Long values, without a Formatter</li>
+ *     <li>any other format is done by a per-thread reused Formatter, like NumberRenderer</li>
+ *     <li>only if enabled, a format without '%' is a DecimalFormat pattern, e.g. <code>#,##0.00</code>, compiled once,
+ *     and cloned per thread, because DecimalFormat isn't thread-safe</li>
+ * </ul>
+ * So, by default, output is the same as NumberRenderer, for any format.
+ *
+ * @author rwperrott
+ */
+public final class NumberInvokeRenderer implements AttributeRenderer<Number> {
+  private static final ThreadLocal<Formatter> FORMATTER = ThreadLocal.withInitial(() -> new Formatter(new StringBuilder()));
+
+  public static void register(final @NonNull STGroup stGroup) {
+    register(stGroup, false);
+  }
+
+  /**
+   * @param decimalPatterns true to format with a DecimalFormat pattern, when a format has no '%'.
+   */
+  public static void register(final @NonNull STGroup stGroup, final boolean decimalPatterns) {
+    stGroup.registerRenderer(Number.class, new NumberInvokeRenderer(decimalPatterns));
+  }
+
+  private final Map<FormatKey, Function<Number, String>> compiled = new ConcurrentHashMap<>();
+  private final boolean decimalPatterns;
+
+  public NumberInvokeRenderer() {
+    this(false);
+  }
+
+  /**
+   * @param decimalPatterns true to format with a DecimalFormat pattern, when a format has no '%'.
+   */
+  public NumberInvokeRenderer(final boolean decimalPatterns) {
+    this.decimalPatterns = decimalPatterns;
+  }
+
+  @Override
+  public String toString(final Number value, final String formatString, final Locale locale) {
+    if (null == formatString)
+      return value.toString();
+    return compiled.computeIfAbsent(new FormatKey(formatString, locale, 0), this::compile).apply(value);
+  }
+
+  private Function<Number, String> compile(final FormatKey key) {
+    final String format = key.format;
+    final Locale locale = null == key.locale ? Locale.getDefault() : key.locale;
+    if (decimalPatterns && format.indexOf('%') < 0) {
+      final DecimalFormat prototype = new DecimalFormat(format, DecimalFormatSymbols.getInstance(locale));
+      final ThreadLocal<DecimalFormat> formats = ThreadLocal.withInitial(() -> (DecimalFormat) prototype.clone());
+      return n -> formats.get().format(n);
+    }
+    final Function<Number, String> formatter = n -> {
+      final Formatter f = FORMATTER.get();
+      final StringBuilder sb = (StringBuilder) f.out();
+      sb.setLength(0);
+      f.format(locale, format, n);
+      return sb.toString();
+    };
+    final IntegerFormat fast = IntegerFormat.parse(format, locale);
+    return null == fast ? formatter : n -> fast.isSupported(n) ? fast.format(n) : formatter.apply(n);
+  }
+
+  /**
+   * A single %d, %x, or %X conversion, with an optional 0 flag and width, and a literal prefix and suffix.
+   */
+  private static final class IntegerFormat {
+    /**
+     * @return null if not a supported format, or locale doesn't use ASCII digits.
+     */
+    private static IntegerFormat parse(final String format, final Locale locale) {
+      final int start = format.indexOf('%');
+      if (start != format.lastIndexOf('%'))
+        return null;
+      int i = start + 1;
+      final int n = format.length();
+      boolean zeroPad = false;
+      if (i < n && format.charAt(i) == '0') {
+        zeroPad = true;
+        i++;
+      }
+      int width = 0;
+      for (; i < n && format.charAt(i) >= '0' && format.charAt(i) <= '9'; i++)
+        width = width * 10 + (format.charAt(i) - '0');
+      if (i == n || width > 64 || (zeroPad && 0 == width))
+        return null;
+      final char conversion = format.charAt(i);
+      switch (conversion) {
+        case 'd':
+          if (DecimalFormatSymbols.getInstance(locale).getZeroDigit() != '0')
+            return null;
+          break;
+        case 'x':
+        case 'X':
+          break;
+        default:
+          return null;
+      }
+      return new IntegerFormat(format.substring(0, start), format.substring(i + 1), zeroPad, width, conversion);
+    }
+
+    private final String prefix;
+    private final String suffix;
+    private final boolean zeroPad;
+    private final int width;
+    private final char conversion;
+
+    private IntegerFormat(final String prefix,
+                          final String suffix,
+                          final boolean zeroPad,
+                          final int width,
+                          final char conversion) {
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.zeroPad = zeroPad;
+      this.width = width;
+      this.conversion = conversion;
+    }
+
+    private boolean isSupported(final Number n) {
+      return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+    }
+
+    private String format(final Number n) {
+      final String digits;
+      boolean negative = false;
+      if (conversion == 'd') {
+        final long v = n.longValue();
+        negative = v < 0;
+        // Sign removed, rather than negated, because Long.MIN_VALUE has no positive.
+        digits = negative ? Long.toString(v).substring(1) : Long.toString(v);
+      } else {
+        // Two's complement, of the value's own size, like Formatter.
+        final long v = n instanceof Long ? n.longValue()
+                       : n instanceof Integer ? n.intValue() & 0xFFFFFFFFL
+                       : n instanceof Short ? n.shortValue() & 0xFFFFL
+                       : n.byteValue() & 0xFFL;
+        final String hex = Long.toHexString(v);
+        digits = conversion == 'X' ? hex.toUpperCase(Locale.ROOT) : hex;
+      }
+      final int len = digits.length() + (negative ? 1 : 0);
+      final StringBuilder sb = new StringBuilder(prefix.length() + Math.max(width, len) + suffix.length());
+      sb.append(prefix);
+      if (len < width && !zeroPad)
+        for (int i = width - len; i > 0; i--)
+          sb.append(' ');
+      if (negative)
+        sb.append('-');
+      if (len < width && zeroPad)
+        for (int i = width - len; i > 0; i--)
+          sb.append('0');
+      return sb.append(digits).append(suffix).toString();
+    }
+  }
+}
@@ -1,10 +1,12 @@
 package rwperrott.stringtemplate.v4;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import lombok.NonNull;
 
 import java.lang.reflect.Array;
 import java.util.*;
 import java.util.function.IntFunction;
+import java.util.stream.BaseStream;
 
 /**
  * Mainly exists to fix stupid lack of support for arrays by ST4!
@@ -15,15 +17,36 @@ import java.util.function.IntFunction;
  */
 @SuppressWarnings("unused")
 public class ObjectFunctions {
+  /**
+   * Arrays at least this long are sorted by Arrays.parallelSort.
+   */
+  public static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
   public static void registerAdapterFunctions() {
     TypeFunctions.registerFunctionClasses(Object.class,
                                           ObjectFunctions.class);
   }
 
   /**
-   * If not a List, tries to convert to a List.
+   * Exposes single-pass sources to ST4, which only iterates Iterables, arrays, Maps, and Iterators, and can't apply
+   * a template to a Stream.
+   * <br/>
+   * An Iterator, Spliterator, or Stream, including primitive Streams, is returned as a single-pass Iterable, consumed
+   * as the template iterates it, and a Stream is closed when exhausted.
+   *
+   * @param o an Iterable, Iterator, Spliterator, Stream, or an array of objects or primitives.
+   * @return an Iterable; a List view for an array.
+   */
+  public static <T> Iterable<T> toIterable(@NonNull Object o) {
+    return iterable(o);
+  }
+
+  /**
+   * If not a List, returns a read-only List view.
+   * <br/>
+   * An Iterator, Spliterator, or Stream source is copied, so use toIterable for constant memory.
    *
-   * @param o an array of objects or primitives.
+   * @param o a Collection, Iterable, Iterator, Spliterator, Stream, or an array of objects or primitives.
    * @return a list of objects, the box objects for an array of primitives.
    */
   public static <T> List<T> toList(@NonNull Object o) {
@@ -31,31 +54,35 @@ public class ObjectFunctions {
   }
 
   /**
-   * If not a List, tries to convert to a List.
+   * Returns a sorted copy, sorted by a primitive sort for primitive arrays, and by a parallel sort when
+   * larger than PARALLEL_SORT_THRESHOLD.
    *
-   * @param o an array of objects or primitives.
-   * @return a list of objects, the box objects for an array of primitives.
+   * @param o Collection or array of objects or primitives.
+   * @return a naturalOrder sorted list of objects, the box objects for an array of primitives.
    */
+  @SuppressWarnings("unchecked")
   public static <T extends Comparable<T>> List<T> toSortedList(@NonNull Object o) {
-    List<T> copy = toCollection0(o, List.class, n -> 0 == n ? Collections.emptyList() : new ArrayList<>(n), true);
-    copy.sort(Comparator.naturalOrder());
-    return copy;
+    final Object array = sortedCopy(o);
+    // Object[] must not be cast to T[], because T erased to Comparable.
+    return array instanceof Object[]
+           ? (List<T>) (List<?>) ObjectArrayList.wrap((Object[]) array)
+           : PrimitiveList.of(array);
   }
 
   /**
-   * If not a Set, returns a HashSet.
+   * If not a Set, returns a read-only Set view, which de-duplicates on iteration.
    *
-   * @param o Collection or array of objects or primitives.
-   * @return a hash set of objects; box objects, if an array of primitives.
+   * @param o a Collection, Iterable, Iterator, Spliterator, Stream, or an array of objects or primitives.
+   * @return a set of objects; box objects, if an array of primitives.
    */
   public static <T> Set<T> toSet(@NonNull Object o) {
     return toCollection0(o, Set.class, n -> 0 == n ? Collections.emptySet() : new HashSet<>(), false);
   }
 
   /**
-   * If not a Set, returns a LinkedHashSet.
+   * If not a Set, returns a read-only Set view, which de-duplicates on iteration, in source order.
    *
-   * @param o Collection or array of objects or primitives.
+   * @param o a Collection, Iterable, Iterator, Spliterator, Stream, or an array of objects or primitives.
    * @return an ordered set of objects; box objects, if an array of primitives.
    */
   public static <T> Set<T> toOrderedSet(@NonNull Object o) {
@@ -63,21 +90,99 @@ public class ObjectFunctions {
   }
 
   /**
-   * If not a Set, returns a TreeHashSet.
+   * If not a SortedSet, returns a TreeSet, built in linear time, from a sorted and de-duplicated copy, rather than
+   * by insertion of each element; an empty input returns an empty SortedSet.
    *
    * @param o Collection or array of objects or primitives.
    * @return a naturalOrder sorted set of objects; box objects, if an array of primitives.
    */
+  @SuppressWarnings("unchecked")
   public static <T extends Comparable<T>> Set<T> toSortedSet(@NonNull Object o) {
-    return toCollection0(o, SortedSet.class, n -> 0 == n ? Collections.emptySet() : new TreeSet<>(), false);
+    if (o instanceof SortedSet)
+      return (Set<T>) o;
+    final Object array = sortedCopy(o);
+    final List<T> sorted = array instanceof Object[]
+                           ? (List<T>) (List<?>) Arrays.asList((Object[]) array)
+                           : PrimitiveList.of(array);
+    final int n = sorted.size();
+    if (0 == n)
+      return Collections.emptySortedSet();
+    // De-duplicate adjacent elements, only boxing the unique elements of primitive arrays.
+    final Object[] unique = new Object[n];
+    int size = 0;
+    T prior = null;
+    for (T e : sorted)
+      if (null == prior || prior.compareTo(e) != 0)
+        unique[size++] = prior = e;
+    return new TreeSet<>(new SortedArrayView<T>(unique, 0, size));
   }
 
   /**
-   * Converts Collection or Object/primitive array to a specified collection type, with optional copying.
+   * @return a sorted copy of a Collection, or an Object or primitive array.
+   */
+  private static Object sortedCopy(final Object o) {
+    final Object array;
+    if (o instanceof Collection)
+      array = ((Collection<?>) o).toArray();
+    else {
+      final Class<?> cls = o.getClass();
+      if (!cls.isArray())
+        throw new UnsupportedOperationException(cls + " is not an Array");
+      final int n = Array.getLength(o);
+      array = Array.newInstance(cls.getComponentType(), n);
+      System.arraycopy(o, 0, array, 0, n);
+    }
+    sort(array);
+    return array;
+  }
+
+  private static void sort(final Object array) {
+    final boolean parallel = Array.getLength(array) >= PARALLEL_SORT_THRESHOLD;
+    if (array instanceof Object[]) {
+      if (parallel)
+        Arrays.parallelSort((Object[]) array, null);
+      else
+        Arrays.sort((Object[]) array);
+    } else if (array instanceof int[]) {
+      if (parallel) Arrays.parallelSort((int[]) array);
+      else Arrays.sort((int[]) array);
+    } else if (array instanceof long[]) {
+      if (parallel) Arrays.parallelSort((long[]) array);
+      else Arrays.sort((long[]) array);
+    } else if (array instanceof byte[]) {
+      if (parallel) Arrays.parallelSort((byte[]) array);
+      else Arrays.sort((byte[]) array);
+    } else if (array instanceof short[]) {
+      if (parallel) Arrays.parallelSort((short[]) array);
+      else Arrays.sort((short[]) array);
+    } else if (array instanceof char[]) {
+      if (parallel) Arrays.parallelSort((char[]) array);
+      else Arrays.sort((char[]) array);
+    } else if (array instanceof double[]) {
+      if (parallel) Arrays.parallelSort((double[]) array);
+      else Arrays.sort((double[]) array);
+    } else if (array instanceof float[]) {
+      if (parallel) Arrays.parallelSort((float[]) array);
+      else Arrays.sort((float[]) array);
+    } else if (array instanceof boolean[]) {
+      // false before true, by counting.
+      final boolean[] a = (boolean[]) array;
+      int falses = 0;
+      for (boolean b : a)
+        if (!b)
+          falses++;
+      Arrays.fill(a, 0, falses, false);
+      Arrays.fill(a, falses, a.length, true);
+    }
+  }
+
+  /**
+   * Converts a Collection, Iterable, single-pass source, or Object/primitive array to a specified collection type, as a lazy read-only
+   * view, or as a copy.
    *
-   * @param o       the source data; any kind of collection, object array, or primitive array.
-   * @param type    the base collection type.
-   * @param factory creates a new sized collection instance.
+   * @param o       the source data; any kind of collection, iterable, object array, or primitive array.
+   * @param type    the base collection type, List or Set.
+   * @param factory creates a new sized collection instance, for a copy.
    * @param copy    set true when need original data protected from modification side effects.
    */
   @SuppressWarnings("unchecked")
@@ -85,28 +190,121 @@ public class ObjectFunctions {
     final Class<?> cls = o.getClass();
     if (type.isAssignableFrom(cls) && !copy)
       return (C) o;
-    if (o instanceof Collection) {
-      final Collection<T> col = (Collection<T>) o;
-      final int n = Array.getLength(o);
+    final Iterable<T> source = iterable(o);
+    // A single-pass source is copied, because a List or Set may be iterated more than once.
+    if (copy || LazyViews.isOnce(source)) {
+      final int n = source instanceof Collection ? ((Collection<?>) source).size() : 16;
       final C to = factory.apply(n);
       if (n > 0)
-        col.addAll((Collection<T>) o);
+        source.forEach(to::add);
       return to;
     }
-    if (!cls.isArray())
-      throw new UnsupportedOperationException(cls + " is not an Array");
-    final int n = Array.getLength(o);
-    if (0 == n)
-      return factory.apply(0);
-    final List<T> list = cls.getComponentType().isPrimitive()
-      ? new PrimitiveList<>(o) : Arrays.asList((T[]) o);
-    if (type == List.class && !copy)
-      return (C) list;
-    final C to = factory.apply(n);
-    to.addAll(list);
-    return to;
+    if (type == List.class)
+      return (C) (source instanceof List ? source : LazyViews.list(source));
+    return (C) LazyViews.distinct(source);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> Iterable<T> iterable(final Object o) {
+    if (o instanceof Iterable)
+      return (Iterable<T>) o;
+    final Class<?> cls = o.getClass();
+    // Wrapped, because PrimitiveList and Arrays.asList write through to the array.
+    if (cls.isArray())
+      return Collections.unmodifiableList(cls.getComponentType().isPrimitive()
+                                          ? PrimitiveList.of(o) : Arrays.asList((T[]) o));
+    if (o instanceof Iterator)
+      return LazyViews.once((Iterator<T>) o, null);
+    if (o instanceof Spliterator)
+      return LazyViews.once(Spliterators.iterator((Spliterator<T>) o), null);
+    if (o instanceof BaseStream) {
+      final BaseStream<T, ?> stream = (BaseStream<T, ?>) o;
+      return LazyViews.once(stream.iterator(), stream);
+    }
+    throw new UnsupportedOperationException(cls + " is not an Array, Iterable, Iterator, Spliterator, or Stream");
   }
 
   private ObjectFunctions() {
   }
+
+  /**
+   * A read-only SortedSet over a range of a sorted array of unique elements, used by the TreeSet(SortedSet)
+   * constructor, for a linear time build.
+   * <br/>
+   * Range views share the array, and find their bounds by binary search; bounds outside a view are clamped to it.
+   */
+  static final class SortedArrayView<T> extends AbstractSet<T> implements SortedSet<T> {
+    private final Object[] array;
+    private final int from;
+    private final int to;
+
+    SortedArrayView(final Object[] array, final int from, final int to) {
+      this.array = array;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<T> iterator() {
+      return (Iterator<T>) Arrays.asList(array).subList(from, to).iterator();
+    }
+
+    @Override
+    public int size() {
+      return to - from;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+      return null != o && Arrays.binarySearch(array, from, to, o) >= 0;
+    }
+
+    @Override
+    public Comparator<? super T> comparator() {
+      return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public SortedSet<T> subSet(final T fromElement, final T toElement) {
+      if (((Comparable<T>) fromElement).compareTo(toElement) > 0)
+        throw new IllegalArgumentException("fromElement > toElement");
+      return new SortedArrayView<>(array, ceiling(fromElement), ceiling(toElement));
+    }
+
+    @Override
+    public SortedSet<T> headSet(final T toElement) {
+      return new SortedArrayView<>(array, from, ceiling(toElement));
+    }
+
+    @Override
+    public SortedSet<T> tailSet(final T fromElement) {
+      return new SortedArrayView<>(array, ceiling(fromElement), to);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T first() {
+      if (from == to)
+        throw new NoSuchElementException();
+      return (T) array[from];
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T last() {
+      if (from == to)
+        throw new NoSuchElementException();
+      return (T) array[to - 1];
+    }
+
+    /**
+     * @return the index of the first element not less than e, in this view.
+     */
+    private int ceiling(final @NonNull T e) {
+      final int i = Arrays.binarySearch(array, from, to, e);
+      return i >= 0 ? i : -i - 1;
+    }
+  }
 }
@@ -5,6 +5,12 @@ import org.stringtemplate.v4.STGroup;
 
 /**
  * An alternative to ObjectAdapter
+ * <br/>
+ * Arrays are supported directly, via ArrayFunctions: length, get, first, last, and slice; registered for Object[]
+ * and the primitive array classes, which other reference array classes inherit, so other types don't get them.
+ * <br/>
+ * Streams, Iterators, and Spliterators are exposed as single-pass Iterables, via ObjectFunctions toIterable, and
+ * are accepted by the PipelineFunctions.
  *
  * @author rwperrott
  */
@@ -12,6 +18,8 @@ import org.stringtemplate.v4.STGroup;
 public final class ObjectInvokeAdaptor extends AbstractInvokeAdaptor<Object> {
   static {
     ObjectFunctions.registerAdapterFunctions();
+    PipelineFunctions.registerAdapterFunctions();
+    ArrayFunctions.registerAdapterFunctions();
   }
 
   public static void register(final @NonNull STGroup stGroup) {
@@ -0,0 +1,285 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.BaseStream;
+
+/**
+ * Lazy, iterator based, collection pipeline functions, because ST4 has no filtering or grouping.
+ * <br/>
+ * Each function returns an Iterable, evaluated on demand as ST iterates it, with no intermediate collections,
+ * except groupBy, which must read all the source, so is only evaluated on first use.
+ * <br/>
+ * Properties are Map keys, or fields and methods without parameters, found via TypeFunctions, like
+ * AbstractInvokeAdaptor, but also trying "get" and "is" prefixed methods, like ST's ObjectModelAdaptor; a dotted
+ * property is a path e.g. <code>address.city</code>.
+ * <br/>
+ * Sources may be single-pass, i.e. an Iterator, Spliterator, or Stream, which are consumed as iterated, so a
+ * pipeline over a cursor runs in constant memory, but groupBy must still hold all the elements.
+ * <br/>
+ * Functions with different parameter counts have different names, so that a chained property is never ambiguous.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class PipelineFunctions {
+  /**
+   * Registered only for sources, i.e. Iterables, single-pass sources, and arrays, so that a model's own members, e.g.
+   * a <code>filter()</code> method, aren't merged with these functions.
+   */
+  public static void registerAdapterFunctions() {
+    for (Class<?> sourceType : new Class<?>[]{Iterable.class, Iterator.class, Spliterator.class, BaseStream.class,
+                                              Object[].class, boolean[].class, byte[].class, char[].class,
+                                              short[].class, int[].class, long[].class, float[].class,
+                                              double[].class})
+      TypeFunctions.registerFunctionClasses(sourceType,
+                                            PipelineFunctions.class);
+  }
+
+  /**
+   * @param source   a Collection, Iterable, single-pass source, or array.
+   * @param property the property tested for truth, like an ST <code>if</code>.
+   * @return the elements with a true property.
+   */
+  public static Iterable<Object> filter(@NonNull Object source, @NonNull String property) {
+    final Property p = new Property(property);
+    return filter0(source, e -> isTrue(p.get(e)));
+  }
+
+  /**
+   * @param source   a Collection, Iterable, single-pass source, or array.
+   * @param property the property to compare.
+   * @param value    compared with property value, or its String value.
+   * @return the elements with a property matching value.
+   */
+  public static Iterable<Object> filterBy(@NonNull Object source, @NonNull String property, Object value) {
+    final Property p = new Property(property);
+    return filter0(source, e -> matches(p.get(e), value));
+  }
+
+  /**
+   * @return the first element for each distinct property value, in source order.
+   */
+  public static Iterable<Object> distinctBy(@NonNull Object source, @NonNull String property) {
+    final Iterable<Object> from = iterable(source);
+    return () -> {
+      final Property p = new Property(property);
+      final Set<Object> seen = new HashSet<>();
+      return new Filtered(from.iterator(), e -> seen.add(p.get(e)));
+    };
+  }
+
+  /**
+   * @return a map of lists of elements, keyed by property value, in source order, built on first use.
+   */
+  public static Map<Object, List<Object>> groupBy(@NonNull Object source, @NonNull String property) {
+    final Iterable<Object> from = iterable(source);
+    return new AbstractMap<Object, List<Object>>() {
+      private Map<Object, List<Object>> groups;
+
+      @Override
+      public Set<Entry<Object, List<Object>>> entrySet() {
+        Map<Object, List<Object>> g = groups;
+        if (null == g) {
+          final Property p = new Property(property);
+          g = new LinkedHashMap<>();
+          for (Object e : from)
+            g.computeIfAbsent(p.get(e), k -> new ArrayList<>()).add(e);
+          groups = g = Collections.unmodifiableMap(g);
+        }
+        return g.entrySet();
+      }
+    };
+  }
+
+  /**
+   * @param size the maximum size of each chunk.
+   * @return lists of up to size elements, only one held at a time.
+   */
+  public static Iterable<List<Object>> chunk(@NonNull Object source, int size) {
+    if (size <= 0)
+      throw new IllegalArgumentException("size=" + size);
+    final Iterable<Object> from = iterable(source);
+    return () -> {
+      final Iterator<Object> it = from.iterator();
+      return new Iterator<List<Object>>() {
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public List<Object> next() {
+          if (!it.hasNext())
+            throw new NoSuchElementException();
+          final List<Object> chunk = new ArrayList<>(size);
+          while (chunk.size() < size && it.hasNext())
+            chunk.add(it.next());
+          return chunk;
+        }
+      };
+    };
+  }
+
+  /**
+   * @return the first n elements.
+   */
+  public static Iterable<Object> take(@NonNull Object source, int n) {
+    final Iterable<Object> from = iterable(source);
+    return () -> {
+      final Iterator<Object> it = from.iterator();
+      return new Iterator<Object>() {
+        private int remaining = n;
+
+        @Override
+        public boolean hasNext() {
+          return remaining > 0 && it.hasNext();
+        }
+
+        @Override
+        public Object next() {
+          if (!hasNext())
+            throw new NoSuchElementException();
+          remaining--;
+          return it.next();
+        }
+      };
+    };
+  }
+
+  /**
+   * @return the elements after the first n elements.
+   */
+  public static Iterable<Object> skip(@NonNull Object source, int n) {
+    final Iterable<Object> from = iterable(source);
+    return () -> {
+      final Iterator<Object> it = from.iterator();
+      for (int i = n; i > 0 && it.hasNext(); i--)
+        it.next();
+      return LazyViews.readOnly(it);
+    };
+  }
+
+  /**
+   * Like ST4 Interpreter.testAttributeTrue.
+   */
+  static boolean isTrue(final Object o) {
+    if (null == o)
+      return false;
+    if (o instanceof Boolean)
+      return (Boolean) o;
+    if (o instanceof Collection)
+      return !((Collection<?>) o).isEmpty();
+    if (o instanceof Map)
+      return !((Map<?, ?>) o).isEmpty();
+    if (o instanceof Iterable)
+      return ((Iterable<?>) o).iterator().hasNext();
+    if (o instanceof Iterator)
+      return ((Iterator<?>) o).hasNext();
+    return true;
+  }
+
+  private static boolean matches(final Object v, final Object value) {
+    if (Objects.equals(v, value))
+      return true;
+    return null != v && null != value && v.toString().equals(value.toString());
+  }
+
+  private static Iterable<Object> iterable(final Object source) {
+    return ObjectFunctions.toIterable(source);
+  }
+
+  private static Iterable<Object> filter0(final Object source, final Predicate<Object> predicate) {
+    final Iterable<Object> from = iterable(source);
+    return () -> new Filtered(from.iterator(), predicate);
+  }
+
+  private PipelineFunctions() {
+  }
+
+  private static final class Filtered implements Iterator<Object> {
+    private final Iterator<?> it;
+    private final Predicate<Object> predicate;
+    private Object next;
+    private boolean ready;
+
+    private Filtered(final Iterator<?> it, final Predicate<Object> predicate) {
+      this.it = it;
+      this.predicate = predicate;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!ready && it.hasNext()) {
+        final Object e = it.next();
+        if (predicate.test(e)) {
+          next = e;
+          ready = true;
+        }
+      }
+      return ready;
+    }
+
+    @Override
+    public Object next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      ready = false;
+      final Object e = next;
+      next = null;
+      return e;
+    }
+  }
+
+  /**
+   * Reads a property path, caching the last MemberInvoker for each name, because elements are usually one type.
+   */
+  private static final class Property {
+    private final String[] names;
+    private final Class<?>[] lastTypes;
+    private final MemberInvoker[] lastInvokers;
+
+    private Property(final String path) {
+      this.names = path.split("\\.");
+      this.lastTypes = new Class<?>[names.length];
+      this.lastInvokers = new MemberInvoker[names.length];
+    }
+
+    private Object get(Object o) {
+      for (int i = 0, n = names.length; i < n && null != o; i++)
+        o = get(o, i);
+      return o;
+    }
+
+    private Object get(final Object o, final int i) {
+      if (o instanceof Map)
+        return ((Map<?, ?>) o).get(names[i]);
+      final Class<?> type = o.getClass();
+      MemberInvoker mi = lastInvokers[i];
+      if (type != lastTypes[i]) {
+        mi = find(type, names[i]);
+        lastTypes[i] = type;
+        lastInvokers[i] = mi;
+      }
+      try {
+        return mi.invoke(o, Collections.emptyList());
+      } catch (Throwable t) {
+        throw STExceptions.noSuchPropertyInObject(o, names[i], t);
+      }
+    }
+
+    private static MemberInvoker find(final Class<?> type, final String name) {
+      final String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+      for (String memberName : new String[]{name, "get" + suffix, "is" + suffix}) {
+        final MemberInvoker mi = TypeFunctions.get(type, memberName)
+          .find(true, Object.class, Collections.emptyList());
+        if (null != mi)
+          return mi;
+      }
+      throw STExceptions.noSuchPropertyInObject(type, name,
+                                                new IllegalArgumentException("No matching field or method found"));
+    }
+  }
+}
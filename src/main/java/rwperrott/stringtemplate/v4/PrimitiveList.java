@@ -1,19 +1,65 @@
 package rwperrott.stringtemplate.v4;
 
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.chars.CharArrayList;
+import it.unimi.dsi.fastutil.doubles.DoubleArrayList;
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.shorts.ShortArrayList;
+import lombok.NonNull;
+
 import java.lang.reflect.Array;
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
 /**
  * A List facade for a primitive arrays.
+ * <br/>
+ * Use <code>of</code> for a typed view, which avoids reflection, and only boxes elements when accessed.
  *
  * @param <E>
  */
 public class PrimitiveList<E> extends AbstractList<E> {
+  /**
+   * Wraps a primitive array in the fastutil ArrayList for the component type, e.g. IntArrayList.wrap(int[]), so that
+   * get, set, indexOf and contains run at array speed, and <code>sort(null)</code> is a primitive sort.
+   * <br/>
+   * The view writes through to the array, until resized.
+   *
+   * @param array a primitive array.
+   * @return a typed List view of array.
+   */
+  @SuppressWarnings("unchecked")
+  public static <E> List<E> of(@NonNull Object array) {
+    final Class<?> type = array.getClass().getComponentType();
+    if (null == type || !type.isPrimitive())
+      throw new IllegalArgumentException(array.getClass().getName() + " is not a primitive array");
+    if (type == int.class)
+      return (List<E>) IntArrayList.wrap((int[]) array);
+    if (type == long.class)
+      return (List<E>) LongArrayList.wrap((long[]) array);
+    if (type == byte.class)
+      return (List<E>) ByteArrayList.wrap((byte[]) array);
+    if (type == short.class)
+      return (List<E>) ShortArrayList.wrap((short[]) array);
+    if (type == char.class)
+      return (List<E>) CharArrayList.wrap((char[]) array);
+    if (type == double.class)
+      return (List<E>) DoubleArrayList.wrap((double[]) array);
+    if (type == float.class)
+      return (List<E>) FloatArrayList.wrap((float[]) array);
+    if (type == boolean.class)
+      return (List<E>) BooleanArrayList.wrap((boolean[]) array);
+    throw new IllegalArgumentException(array.getClass().getName() + " is not a primitive array");
+  }
+
   private final Object array;
 
   public PrimitiveList(Object array) {
@@ -0,0 +1,329 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.misc.STMessage;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An opt-in cache of rendered output, for templates which are pure functions of their attributes, e.g. the same DTO
+ * rendered for several modules.
+ * <br/>
+ * Keyed by the STGroup and CompiledST identity, the template name, the Locale, the line width, and a structural
+ * snapshot of the attributes:
+ * <ul>
+ *     <li>Maps, Collections, and arrays are copied, in iteration order, with their class, so a changed or reordered
+ *     element is a different key, and a later change to the original doesn't change the key</li>
+ *     <li>any other Iterable isn't cached, because it may only be iterable once, or endless</li>
+ *     <li>other values are compared by equals, so should be immutable, with value equality, e.g. String, Number, or
+ *     an immutable DTO; an object with identity equality only misses, but a mutated one returns stale output</li>
+ * </ul>
+ * An output which reported any ST message isn't cached, so the messages are always reported.  Register all
+ * AttributeRenderers and ModelAdaptors before rendering, because they're not in the key.
+ * <br/>
+ * A verification mode re-renders every nth hit, and compares, to catch impure templates, e.g. ones using a mutable
+ * model, or a renderer with hidden state; an impure template isn't cached again.
+ * <br/>
+ * Bounded by total weight, with least-recently-used eviction: the chars of each output, plus ELEMENT_WEIGHT per
+ * element copied into its key, so a small output from a large model still counts the memory of the copy.
+ * <br/>
+ * The snapshot is copied on every render, including hits, so costs time, and garbage, in proportion to the size of
+ * the attributes; only worthwhile when rendering costs more than copying, e.g. not for a large model with a cheap
+ * template.  Thread-safe.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class RenderCache {
+  /**
+   * Deeper attributes, e.g. a cyclic graph, aren't cached.
+   */
+  private static final int MAX_DEPTH = 32;
+  /**
+   * The weight of each element copied into a key, in chars, i.e. about 8 bytes, for a reference and its share of the
+   * copied list.
+   */
+  static final int ELEMENT_WEIGHT = 4;
+
+  private final BoundedCache<Key, Rendered> cache = new BoundedCache<>("RenderCache", r -> r.weight, v -> false);
+  private final Set<CompiledST> impure = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong verifications = new AtomicLong();
+  private volatile int verifyEvery;
+
+  /**
+   * @param maximumChars the maximum total weight, of the cached outputs, in chars, and of their keys.
+   */
+  public RenderCache(final long maximumChars) {
+    cache.maximumWeight(maximumChars);
+  }
+
+  /**
+   * Re-render every nth hit, and compare with the cached output; 0, the default, to never verify.
+   */
+  public RenderCache verifyEvery(final int n) {
+    if (n < 0)
+      throw new IllegalArgumentException("n " + n);
+    this.verifyEvery = n;
+    return this;
+  }
+
+  /**
+   * Render st, or return the output of an earlier render with the same key.
+   *
+   * @param locale   null for the default Locale.
+   * @param listener null for the STGroup listener.
+   */
+  public String render(final @NonNull ST st, Locale locale, STErrorListener listener, final int lineWidth) {
+    if (null == locale)
+      locale = Locale.getDefault();
+    if (null == listener)
+      listener = st.groupThatCreatedThisInstance.getListener();
+    final Key key = impure.contains(st.impl) ? null : Key.of(st, locale, lineWidth);
+    if (null == key)
+      return renderNow(st, locale, new Listener(listener), lineWidth);
+    final Rendered r = cache.get(key);
+    if (null != r) {
+      final String cached = r.output;
+      final int n = verifyEvery;
+      if (0 == n || 0 != hits.incrementAndGet() % n)
+        return cached;
+      verifications.incrementAndGet();
+      final Listener l = new Listener(listener);
+      final String output = renderNow(st, locale, l, lineWidth);
+      if (!output.equals(cached))
+        impure.add(st.impl);
+      else if (!l.reported)
+        return cached;
+      return output;
+    }
+    final Listener l = new Listener(listener);
+    final String output = renderNow(st, locale, l, lineWidth);
+    if (!l.reported)
+      cache.put(key, new Rendered(output, (int) Math.min(Integer.MAX_VALUE, output.length() + key.weight)));
+    return output;
+  }
+
+  public String render(final @NonNull ST st) {
+    return render(st, null, null, STWriter.NO_WRAP);
+  }
+
+  private static String renderNow(final ST st, final Locale locale, final STErrorListener listener, final int lineWidth) {
+    try (ChunkedSTWriter w = new ChunkedSTWriter()) {
+      w.setLineWidth(lineWidth);
+      st.write(w, locale, listener);
+      return w.toString();
+    }
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return the count of verifying re-renders.
+   */
+  public long verifications() {
+    return verifications.get();
+  }
+
+  /**
+   * @return the names of the templates found impure by verification, sorted.
+   */
+  public Set<String> impureTemplates() {
+    final Set<String> names = new TreeSet<>();
+    synchronized (impure) {
+      impure.forEach(impl -> names.add(impl.name));
+    }
+    return names;
+  }
+
+  /**
+   * Notes if any message is reported, so the output isn't cached.
+   */
+  private static final class Listener implements STErrorListener {
+    private final STErrorListener listener;
+    private volatile boolean reported;
+
+    private Listener(final STErrorListener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void compileTimeError(final STMessage msg) {
+      reported = true;
+      listener.compileTimeError(msg);
+    }
+
+    @Override
+    public void runTimeError(final STMessage msg) {
+      reported = true;
+      listener.runTimeError(msg);
+    }
+
+    @Override
+    public void IOError(final STMessage msg) {
+      reported = true;
+      listener.IOError(msg);
+    }
+
+    @Override
+    public void internalError(final STMessage msg) {
+      reported = true;
+      listener.internalError(msg);
+    }
+  }
+
+  private static final class Rendered {
+    private final String output;
+    private final int weight;
+
+    private Rendered(final String output, final int weight) {
+      this.output = output;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * A copied Map, Collection, or array, with its class.
+   */
+  private static final class Node {
+    private final Class<?> type;
+    private final List<Object> items;
+
+    private Node(final Class<?> type, final List<Object> items) {
+      this.type = type;
+      this.items = items;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Node))
+        return false;
+      final Node n = (Node) o;
+      return type == n.type && items.equals(n.items);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * type.hashCode() + items.hashCode();
+    }
+  }
+
+  private static final class Key {
+    /**
+     * Marks attributes which can't be copied into a key, i.e. too deep, or a non-Collection Iterable.
+     */
+    private static final Object UNCACHEABLE = new Object();
+
+    /**
+     * @return null if the attributes can't be copied into a key.
+     */
+    static Key of(final ST st, final Locale locale, final int lineWidth) {
+      final Map<String, Object> attributes = st.getAttributes();
+      final long[] elements = {0};
+      final Object snapshot = snapshot(attributes, 0, elements);
+      return UNCACHEABLE == snapshot
+             ? null
+             : new Key(st, locale, lineWidth, snapshot, elements[0] * ELEMENT_WEIGHT);
+    }
+
+    /**
+     * @param elements incremented by the number of elements copied.
+     */
+    private static Object snapshot(final Object value, final int depth, final long[] elements) {
+      if (null == value)
+        return null;
+      final List<Object> items;
+      if (value instanceof Map) {
+        final Map<?, ?> map = (Map<?, ?>) value;
+        items = new ArrayList<>(map.size() * 2);
+        for (Map.Entry<?, ?> e : map.entrySet()) {
+          items.add(e.getKey());
+          items.add(e.getValue());
+        }
+      } else if (value instanceof Collection) {
+        items = new ArrayList<>((Collection<?>) value);
+      } else if (value instanceof Iterable) {
+        return UNCACHEABLE; // Copying may use it up, or never end.
+      } else if (value.getClass().isArray()) {
+        final int n = Array.getLength(value);
+        items = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+          items.add(Array.get(value, i));
+      } else
+        return value;
+      if (depth == MAX_DEPTH)
+        return UNCACHEABLE;
+      elements[0] += items.size();
+      for (int i = 0, n = items.size(); i < n; i++) {
+        final Object o = snapshot(items.get(i), depth + 1, elements);
+        if (UNCACHEABLE == o)
+          return o;
+        items.set(i, o);
+      }
+      return new Node(value.getClass(), items);
+    }
+
+    // STGroup and CompiledST by identity, because both are mutable.
+    private final STGroup group;
+    private final CompiledST impl;
+    private final String name;
+    private final Locale locale;
+    private final int lineWidth;
+    private final Object attributes;
+    private final int hashCode;
+    private final long weight;
+
+    private Key(final ST st, final Locale locale, final int lineWidth, final Object attributes, final long weight) {
+      this.group = st.groupThatCreatedThisInstance;
+      this.impl = st.impl;
+      this.name = st.getName();
+      this.locale = locale;
+      this.lineWidth = lineWidth;
+      this.attributes = attributes;
+      this.weight = weight;
+      this.hashCode = Objects.hash(System.identityHashCode(group), System.identityHashCode(impl), name, locale,
+                                   lineWidth, attributes);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Key))
+        return false;
+      final Key k = (Key) o;
+      return hashCode == k.hashCode &&
+             group == k.group &&
+             impl == k.impl &&
+             name.equals(k.name) &&
+             locale.equals(k.locale) &&
+             lineWidth == k.lineWidth &&
+             Objects.equals(attributes, k.attributes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
@@ -0,0 +1,311 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.misc.STMessage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Renders many independent outputs, from one STGroup, concurrently, with one ST per job, each written to its file
+ * via STRenderer.
+ * <br/>
+ * Checked as safe for concurrent rendering:
+ * <ul>
+ *     <li>STGroup templates, ModelAdaptors, and AttributeRenderers maps are synchronized, and STGroupFile and
+ *     STGroupString loading is synchronized</li>
+ *     <li>STGroupDir loads templates lazily, without synchronization, so each job template is looked up once,
+ *     serially, before any job is run; a sub-template first used concurrently may still be reported as redefined,
+ *     so load an STGroupDir before running jobs which use many sub-templates</li>
+ *     <li>InvokeDispatcher, TypeFunctions, ClassMembers, and the renderers in this library, use immutable,
+ *     synchronized, concurrent, or per-thread state</li>
+ * </ul>
+ * Register all AttributeRenderers and ModelAdaptors before run, because STGroup registration isn't atomic with
+ * rendering.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class RenderScheduler {
+  /**
+   * @return a virtual thread per task ExecutorService, or null if not supported by this JVM.
+   */
+  public static ExecutorService virtualThreadExecutor() {
+    try {
+      return (ExecutorService) MethodHandles.publicLookup()
+        .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class))
+        .invoke();
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
+  /**
+   * @return a count of the written, skipped (unchanged or up to date), and failed results, e.g. for a build log.
+   */
+  public static String summary(final @NonNull Collection<Result> results) {
+    int written = 0;
+    int skipped = 0;
+    int failed = 0;
+    for (Result r : results)
+      if (null != r.failure)
+        failed++;
+      else if (r.written)
+        written++;
+      else
+        skipped++;
+    return String.format("%d written, %d skipped, %d failed", written, skipped, failed);
+  }
+
+  private final STGroup stGroup;
+  private Executor executor = ForkJoinPool.commonPool();
+  private int maxInFlight = Runtime.getRuntime().availableProcessors() * 2;
+  private Charset charset = StandardCharsets.UTF_8;
+  private Locale locale = Locale.getDefault();
+  private int lineWidth = STWriter.NO_WRAP;
+  private boolean skipUnchanged;
+  private DependencyIndex dependencyIndex;
+
+  public RenderScheduler(final @NonNull STGroup stGroup) {
+    this.stGroup = stGroup;
+  }
+
+  /**
+   * Default is ForkJoinPool.commonPool(); not shutdown by run.
+   */
+  public RenderScheduler executor(final @NonNull Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * The maximum jobs submitted, but not completed, to bound memory use; default is twice the processors.
+   */
+  public RenderScheduler maxInFlight(final int maxInFlight) {
+    if (maxInFlight < 1)
+      throw new IllegalArgumentException("maxInFlight " + maxInFlight);
+    this.maxInFlight = maxInFlight;
+    return this;
+  }
+
+  public RenderScheduler charset(final @NonNull Charset charset) {
+    this.charset = charset;
+    return this;
+  }
+
+  public RenderScheduler locale(final @NonNull Locale locale) {
+    this.locale = locale;
+    return this;
+  }
+
+  public RenderScheduler lineWidth(final int lineWidth) {
+    this.lineWidth = lineWidth;
+    return this;
+  }
+
+  /**
+   * Skip writing a file with unchanged content, so its timestamp doesn't trigger downstream rebuilds.
+   */
+  public RenderScheduler skipUnchanged(final boolean skipUnchanged) {
+    this.skipUnchanged = skipUnchanged;
+    return this;
+  }
+
+  /**
+   * Only render a job if its output is stale in index, i.e. missing, or with a changed template or input, then record
+   * its dependencies in index; null to render all jobs.
+   * <br/>
+   * Save the index after run, and load it before the next build.
+   */
+  public RenderScheduler dependencyIndex(final DependencyIndex index) {
+    this.dependencyIndex = index;
+    return this;
+  }
+
+  /**
+   * Runs all the jobs, and waits for them to complete.
+   *
+   * @return a Result for each job, in job order.
+   */
+  public List<Result> run(final @NonNull Collection<Job> jobs) throws InterruptedException {
+    final List<Job> list = new ArrayList<>(jobs);
+    final Result[] results = new Result[list.size()];
+    // Serially, so an STGroupDir doesn't load a template concurrently.
+    final Set<String> missing = new HashSet<>();
+    final boolean[] upToDate = new boolean[results.length];
+    for (int i = 0; i < results.length; i++) {
+      final Job job = list.get(i);
+      if (!missing.contains(job.templateName) && null == stGroup.lookupTemplate(job.templateName))
+        missing.add(job.templateName);
+      upToDate[i] = null != dependencyIndex && !dependencyIndex.isStale(job.output, stGroup);
+    }
+    final Semaphore inFlight = new Semaphore(maxInFlight);
+    final CountDownLatch done = new CountDownLatch(results.length);
+    for (int i = 0; i < results.length; i++) {
+      final Job job = list.get(i);
+      final Result result = results[i] = new Result(job);
+      if (missing.contains(job.templateName)) {
+        result.failure = new IllegalArgumentException("no template \"" + job.templateName + "\"");
+        done.countDown();
+        continue;
+      }
+      if (upToDate[i]) {
+        done.countDown();
+        continue;
+      }
+      inFlight.acquire();
+      try {
+        executor.execute(() -> {
+          try {
+            render(result);
+          } finally {
+            inFlight.release();
+            done.countDown();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        result.failure = e;
+        inFlight.release();
+        done.countDown();
+      }
+    }
+    done.await();
+    final List<Result> r = new ArrayList<>(results.length);
+    Collections.addAll(r, results);
+    return r;
+  }
+
+  private void render(final Result result) {
+    final Job job = result.job;
+    final DependencyIndex index = this.dependencyIndex;
+    // Only used by this thread.
+    final Set<CompiledST> templates = null == index ? null : Collections.newSetFromMap(new IdentityHashMap<>());
+    final Consumer<CompiledST> tracker = null == index ? null : templates::add;
+    try {
+      final ST st = stGroup.getInstanceOf(job.templateName);
+      STUtils.applyAttributes(st, job.attributes);
+      if (skipUnchanged)
+        result.written = STRenderer.writeIfChanged(st, job.output, charset, locale, result, lineWidth, tracker);
+      else {
+        STRenderer.write(st, job.output, charset, locale, result, lineWidth, tracker);
+        result.written = true;
+      }
+      if (null != index)
+        index.record(job.output, templates, job.inputs);
+    } catch (Throwable t) {
+      result.failure = t;
+      if (null != index)
+        index.remove(job.output);
+      // Recorded first, so an Error, e.g. StackOverflowError from a recursive template, isn't reported as skipped.
+      if (t instanceof Error)
+        throw (Error) t;
+    }
+  }
+
+  /**
+   * A template, its attributes, the file to write, and any input files read to make the attributes.
+   */
+  public static final class Job {
+    public final String templateName;
+    public final Map<String, ?> attributes;
+    public final Path output;
+    /**
+     * Recorded by a DependencyIndex, so a changed input makes output stale.
+     */
+    public final Collection<Path> inputs;
+
+    public Job(final @NonNull String templateName,
+               final Map<String, ?> attributes,
+               final @NonNull Path output,
+               final Collection<Path> inputs) {
+      this.templateName = templateName;
+      this.attributes = attributes;
+      this.output = output;
+      this.inputs = inputs;
+    }
+
+    public Job(final @NonNull String templateName, final Map<String, ?> attributes, final @NonNull Path output) {
+      this(templateName, attributes, output, null);
+    }
+
+    @Override
+    public String toString() {
+      return templateName + " -> " + output;
+    }
+  }
+
+  /**
+   * The outcome of a Job, including the ST messages reported while rendering it.
+   */
+  public static final class Result implements STErrorConsumer {
+    public final Job job;
+    private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean written;
+    private volatile Throwable failure;
+
+    private Result(final Job job) {
+      this.job = job;
+    }
+
+    @Override
+    public void accept(final String label, final STMessage msg) {
+      messages.add(label + ": " + msg);
+    }
+
+    public List<String> messages() {
+      return Collections.unmodifiableList(messages);
+    }
+
+    /**
+     * @return false if failed, skipped as unchanged, or up to date.
+     */
+    public boolean isWritten() {
+      return written;
+    }
+
+    public boolean isSkipped() {
+      return null == failure && !written;
+    }
+
+    /**
+     * @return null if rendered and written.
+     */
+    public Throwable failure() {
+      return failure;
+    }
+
+    public boolean isSuccess() {
+      return null == failure && messages.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return job + (null != failure ? " failed: " + failure : written ? " written" : " skipped") +
+             (messages.isEmpty() ? "" : " " + messages);
+    }
+  }
+}
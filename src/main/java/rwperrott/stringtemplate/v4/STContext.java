@@ -1,6 +1,5 @@
 package rwperrott.stringtemplate.v4;
 
-import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import lombok.NonNull;
 import org.stringtemplate.v4.*;
@@ -10,11 +9,14 @@ import org.stringtemplate.v4.misc.STRuntimeMessagePatch;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.LineNumberReader;
+import java.io.Reader;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
-import java.util.regex.Matcher;
 
 import static java.lang.String.format;
 
@@ -57,7 +59,11 @@ public class STContext implements Closeable {
     StringInvokeAdaptor.class
   };
   private final Set<Option> options = EnumSet.noneOf(Option.class);
-  private final Map<Object, Object2IntMap<String>> stGroupMetaMap = new HashMap<>();
+  /**
+   * Template line numbers, keyed by template source, each scanned once, without a global lock, so a scan only blocks
+   * patches needing the same source.
+   */
+  private final Map<Object, CompletableFuture<Object2IntMap<String>>> templateLinesMap = new ConcurrentHashMap<>();
   private final Set<String> packageNames = new LinkedHashSet<>();
   private final Map<String, Class<?>> classCache = new HashMap<>();
   private final Object lock = new Object();
@@ -185,8 +191,49 @@ public class STContext implements Closeable {
   @SuppressWarnings("RedundantThrows")
   @Override
   public void close() throws IOException {
-    synchronized (stGroupMetaMap) {
-      stGroupMetaMap.clear();
+    templateLinesMap.clear();
+  }
+
+  /**
+   * Start scanning the template line numbers of stGroup, and its imports, in the background, so the first patch
+   * doesn't wait; an STGroupDir is scanned per group file, on first use.
+   * <br/>
+   * Called by the register methods, with the STGroup encoding, so only needed for another encoding, or for imports
+   * loaded after registration.
+   *
+   * @param stGroup  the group, just loaded
+   * @param encoding the group source encoding
+   */
+  public void preloadTemplateLines(@NonNull STGroup stGroup, @NonNull String encoding) {
+    preloadTemplateLines(stGroup, encoding, Collections.newSetFromMap(new IdentityHashMap<>()));
+  }
+
+  private void preloadTemplateLines(STGroup stGroup, String encoding, Set<STGroup> dejaVu) {
+    if (!dejaVu.add(stGroup))
+      return;
+    final STGroupType type;
+    try {
+      type = STGroupType.of(stGroup);
+    } catch (IllegalArgumentException e) {
+      return; // Not an STGroupType
+    }
+    if (type != STGroupType.DIRECTORY)
+      try {
+        templateLines(type, stGroup, type.getTemplateSource(stGroup, ""), encoding, true);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    for (STGroup g : stGroup.getImportedGroups())
+      preloadTemplateLines(g, encoding, dejaVu);
+  }
+
+  /**
+   * Preload for a registration, where a failure is left for patch to report, because the scan is only a hint.
+   */
+  private void preloadTemplateLines(final STGroup stGroup) {
+    try {
+      preloadTemplateLines(stGroup, null == stGroup.encoding ? "UTF-8" : stGroup.encoding);
+    } catch (UncheckedIOException ignore) {
     }
   }
 
@@ -202,6 +249,7 @@ public class STContext implements Closeable {
                                rendererClassName,
                                AttributeRenderer.class,
                                stGroup::registerRenderer);
+    preloadTemplateLines(stGroup);
   }
 
   /**
@@ -213,6 +261,7 @@ public class STContext implements Closeable {
     registerAttributeExtensions(map,
                                 AttributeRenderer.class,
                                 stGroup::registerRenderer);
+    preloadTemplateLines(stGroup);
   }
 
   /**
@@ -224,6 +273,7 @@ public class STContext implements Closeable {
     registerAttributeExtensions(map,
                                 ModelAdaptor.class,
                                 stGroup::registerModelAdaptor);
+    preloadTemplateLines(stGroup);
   }
 
   public final void registerModelAdaptor(@NonNull final STGroup stGroup,
@@ -233,6 +283,7 @@ public class STContext implements Closeable {
                                modelAdapterClassName,
                                ModelAdaptor.class,
                                stGroup::registerModelAdaptor);
+    preloadTemplateLines(stGroup);
   }
 
   private <T> void registerAttributeExtensions(
@@ -350,7 +401,7 @@ public class STContext implements Closeable {
           final STGroup stGroup = st.groupThatCreatedThisInstance;
           final int n = getTemplateLineNumber(stGroup, encoding, name);
           if (n != -1)
-            return new STRuntimeMessagePatch((STRuntimeMessage) msg, n);
+            return new STRuntimeMessagePatch(stRuntimeMessage, n);
           scope = scope.parent;
         }
         while (scope != null);
@@ -374,25 +425,42 @@ public class STContext implements Closeable {
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
-    synchronized (stGroupMetaMap) {
-      return stGroupMetaMap.computeIfAbsent(templateSource, k -> {
-        final Object2IntMap<String> templateLineNumbers = new Object2IntLinkedOpenHashMap<>();
-        try (final LineNumberReader lnr = new LineNumberReader(type.openReader(stGroup, templateSource, encoding))) {
-          lnr.setLineNumber(1);
-          for (String line; (line = lnr.readLine()) != null; ) {
-            final Matcher m = STUtils.templateMatcher(line);
-            if (m.matches()) {
-              templateLineNumbers.put(m.group(1), lnr.getLineNumber());
-            }
-          }
-        } catch (IOException e) {
-          throw new UncheckedIOException(e);
-        }
-        return templateLineNumbers;
-      }).getOrDefault(templateName, -1);
+    try {
+      return templateLines(type, stGroup, templateSource, encoding, false).join().getInt(templateName);
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw e;
     }
   }
 
+  /**
+   * The first caller for a source scans it, in the background if async, and a failed scan is forgotten, so retried.
+   */
+  private CompletableFuture<Object2IntMap<String>> templateLines(final STGroupType type,
+                                                                 final STGroup stGroup,
+                                                                 final Object templateSource,
+                                                                 final String encoding,
+                                                                 final boolean async) {
+    final CompletableFuture<Object2IntMap<String>> created = new CompletableFuture<>();
+    final CompletableFuture<Object2IntMap<String>> existing = templateLinesMap.putIfAbsent(templateSource, created);
+    if (null != existing)
+      return existing;
+    final Runnable scan = () -> {
+      try (Reader r = type.openReader(stGroup, templateSource, encoding)) {
+        created.complete(TemplateHeaderScanner.scan(r));
+      } catch (IOException | RuntimeException e) {
+        templateLinesMap.remove(templateSource, created);
+        created.completeExceptionally(e instanceof IOException ? new UncheckedIOException((IOException) e) : e);
+      }
+    };
+    if (async)
+      ForkJoinPool.commonPool().execute(scan);
+    else
+      scan.run();
+    return created;
+  }
+
   /**
    * Current options, which may expand, thus the ALL constant.
    */
@@ -8,7 +8,6 @@ import org.stringtemplate.v4.STGroupString;
 import org.stringtemplate.v4.misc.Misc;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
 import java.net.URL;
@@ -114,7 +113,7 @@ public enum STGroupType implements MultilineAppender {
 
     @Override
     Reader openReader(final @NonNull STGroup stGroup, final @NonNull Object source, final @NonNull String encoding) throws IOException {
-      return new InputStreamReader(((URL) source).openStream(), encoding);
+      return SourceReaders.open((URL) source, encoding);
     }
   },
   /**
@@ -156,12 +155,18 @@ public enum STGroupType implements MultilineAppender {
     @Override
     public Object getTemplateSource(final @NonNull STGroup stGroup, final @NonNull String templateName) throws IOException {
       final URL root = as(stGroup).root;
-      URL url = new URL(root + Misc.getParent(templateName) + GROUP_FILE_EXTENSION);
+      final String groupFileName = Misc.getParent(templateName) + GROUP_FILE_EXTENSION;
+      final String templateFileName = Misc.getPrefix(templateName) + Misc.getFileName(templateName) + TEMPLATE_FILE_EXTENSION;
+      // An index for file and jar roots, so only a miss probes.
+      URL url = TemplateDirIndex.resolve(root, groupFileName, templateFileName);
+      if (null != url)
+        return url;
+      url = new URL(root + groupFileName);
       try {
         url.openStream().close();
         return url;
       } catch (IOException ioe) {
-        url = new URL(root + Misc.getPrefix(templateName) + Misc.getFileName(templateName) + TEMPLATE_FILE_EXTENSION);
+        url = new URL(root + templateFileName);
         url.openStream().close();
         return url;
       }
@@ -169,7 +174,7 @@ public enum STGroupType implements MultilineAppender {
 
     @Override
     Reader openReader(final @NonNull STGroup stGroup, final @NonNull Object source, final @NonNull String encoding) throws IOException {
-      return new InputStreamReader(((URL) source).openStream(), encoding);
+      return SourceReaders.open((URL) source, encoding);
     }
   };
   private static final Map<Class<?>, STGroupType> MAP;
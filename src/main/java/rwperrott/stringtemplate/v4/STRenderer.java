@@ -0,0 +1,399 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.InstanceScope;
+import org.stringtemplate.v4.Interpreter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STWriter;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.stringtemplate.v4.misc.ErrorManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Renders an ST directly to a WritableByteChannel, e.g. a FileChannel, rather than to a String, then to a byte[],
+ * then to a file, which is three full copies of the output.
+ * <br/>
+ * Chars are rendered into a streaming ChunkedSTWriter, encoded by a per-thread reused CharsetEncoder, into a pooled
+ * direct ByteBuffer, which is written to the channel whenever full, so peak memory is bounded by the buffer sizes,
+ * not the output size.
+ * <br/>
+ * Malformed and unmappable chars are replaced, like OutputStreamWriter.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class STRenderer {
+  public static final int BUFFER_SIZE = 64 * 1024;
+  // Buffer methods are called via Buffer, because the JDK 9+ covariant overrides aren't in Java 8.
+  private static final SoftPool<ByteBuffer> BUFFERS =
+    SoftPool.<ByteBuffer>builder(() -> ByteBuffer.allocateDirect(BUFFER_SIZE))
+      .capacity(64)
+      .passivator(b -> ((Buffer) b).clear())
+      .build();
+  private static final ThreadLocal<Map<Charset, CharsetEncoder>> ENCODERS = ThreadLocal.withInitial(HashMap::new);
+
+  private static CharsetEncoder encoder(final Charset charset) {
+    return ENCODERS.get()
+      .computeIfAbsent(charset, c -> c.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE))
+      .reset();
+  }
+
+  /**
+   * @param locale    null for the default Locale.
+   * @param listener  null for the STGroup listener.
+   * @param lineWidth STWriter.NO_WRAP for no wrapping.
+   * @return the number of bytes written.
+   * @throws IOException the first write failure, which ST only reports to the listener.
+   */
+  public static long write(final @NonNull ST st,
+                           final @NonNull WritableByteChannel channel,
+                           final @NonNull Charset charset,
+                           final Locale locale,
+                           final STErrorListener listener,
+                           final int lineWidth) throws IOException {
+    return write(st, channel, charset, locale, listener, lineWidth, null);
+  }
+
+  /**
+   * @param tracker if not null, is passed each named template executed, for DependencyIndex.
+   */
+  static long write(final @NonNull ST st,
+                    final @NonNull WritableByteChannel channel,
+                    final @NonNull Charset charset,
+                    final Locale locale,
+                    final STErrorListener listener,
+                    final int lineWidth,
+                    final Consumer<CompiledST> tracker) throws IOException {
+    final ChannelWriter out = new ChannelWriter(channel, charset);
+    try {
+      try (ChunkedSTWriter w = new ChunkedSTWriter(out, System.getProperty("line.separator"))) {
+        w.setLineWidth(lineWidth);
+        final Locale l = null == locale ? Locale.getDefault() : locale;
+        final STErrorListener el = null == listener ? st.groupThatCreatedThisInstance.getListener() : listener;
+        if (null == tracker)
+          st.write(w, l, el);
+        else // Like ST.write
+          new TrackingInterpreter(st.groupThatCreatedThisInstance, l, new ErrorManager(el), tracker)
+            .exec(w, new InstanceScope(null, st));
+      }
+      out.close();
+    } catch (UncheckedIOException e) {
+      throw e.getCause(); // From ChunkedSTWriter.close
+    } finally {
+      out.release();
+    }
+    return out.bytes;
+  }
+
+  public static long write(final @NonNull ST st,
+                           final @NonNull WritableByteChannel channel) throws IOException {
+    return write(st, channel, StandardCharsets.UTF_8, null, null, STWriter.NO_WRAP);
+  }
+
+  /**
+   * Write to file, via a FileChannel, creating or truncating it.
+   *
+   * @return the number of bytes written.
+   */
+  public static long write(final @NonNull ST st,
+                           final @NonNull Path file,
+                           final @NonNull Charset charset,
+                           final Locale locale,
+                           final STErrorListener listener,
+                           final int lineWidth) throws IOException {
+    return write(st, file, charset, locale, listener, lineWidth, null);
+  }
+
+  static long write(final @NonNull ST st,
+                    final @NonNull Path file,
+                    final @NonNull Charset charset,
+                    final Locale locale,
+                    final STErrorListener listener,
+                    final int lineWidth,
+                    final Consumer<CompiledST> tracker) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE)) {
+      return write(st, channel, charset, locale, listener, lineWidth, tracker);
+    }
+  }
+
+  public static long write(final @NonNull ST st, final @NonNull Path file) throws IOException {
+    return write(st, file, StandardCharsets.UTF_8, null, null, STWriter.NO_WRAP);
+  }
+
+  /**
+   * Write to file only if the content changed, so an unchanged file keeps its timestamp, and doesn't trigger
+   * downstream rebuilds, e.g. recompilation in a Maven build.
+   * <br/>
+   * The encoded output is compared with the file as it's rendered, one buffer at a time, without reading the file
+   * into memory; from the first difference, the rest is written in place, then the file truncated.
+   *
+   * @return true if written or created, false if skipped as unchanged.
+   */
+  public static boolean writeIfChanged(final @NonNull ST st,
+                                       final @NonNull Path file,
+                                       final @NonNull Charset charset,
+                                       final Locale locale,
+                                       final STErrorListener listener,
+                                       final int lineWidth) throws IOException {
+    return writeIfChanged(st, file, charset, locale, listener, lineWidth, null);
+  }
+
+  static boolean writeIfChanged(final @NonNull ST st,
+                                final @NonNull Path file,
+                                final @NonNull Charset charset,
+                                final Locale locale,
+                                final STErrorListener listener,
+                                final int lineWidth,
+                                final Consumer<CompiledST> tracker) throws IOException {
+    // Checked first, because an empty render of a missing file would otherwise compare as unchanged.
+    final boolean created = !Files.exists(file);
+    try (FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE)) {
+      final CompareChannel compare = new CompareChannel(channel);
+      try {
+        write(st, compare, charset, locale, listener, lineWidth, tracker);
+        return compare.finish() || created;
+      } finally {
+        compare.release();
+      }
+    }
+  }
+
+  public static boolean writeIfChanged(final @NonNull ST st, final @NonNull Path file) throws IOException {
+    return writeIfChanged(st, file, StandardCharsets.UTF_8, null, null, STWriter.NO_WRAP);
+  }
+
+  private STRenderer() {
+  }
+
+  /**
+   * Passes each named template executed, including sub-templates, and templates from imported groups, to a tracker.
+   * <br/>
+   * Anonymous sub-templates are skipped, because they're part of their enclosing template.
+   */
+  private static final class TrackingInterpreter extends Interpreter {
+    private final Consumer<CompiledST> tracker;
+
+    private TrackingInterpreter(final STGroup group,
+                                final Locale locale,
+                                final ErrorManager errMgr,
+                                final Consumer<CompiledST> tracker) {
+      super(group, locale, errMgr, false);
+      this.tracker = tracker;
+    }
+
+    @Override
+    public int exec(final STWriter out, final InstanceScope scope) {
+      final CompiledST impl = scope.st.impl;
+      if (!impl.isAnonSubtemplate)
+        tracker.accept(impl);
+      return super.exec(out, scope);
+    }
+  }
+
+  /**
+   * Compares written bytes with the file, until the first difference, then writes the rest in place.
+   */
+  private static final class CompareChannel implements WritableByteChannel {
+    private final FileChannel file;
+    private final CloseableSupplier<ByteBuffer> borrowed = BUFFERS.get();
+    private final ByteBuffer existing = borrowed.get();
+    private long position;
+    private boolean changed;
+
+    private CompareChannel(final FileChannel file) {
+      this.file = file;
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+      final int n = src.remaining();
+      if (!changed)
+        compare(src);
+      while (src.hasRemaining())
+        position += file.write(src, position);
+      return n;
+    }
+
+    /**
+     * Consumes the matching prefix of src; any remainder differs.
+     */
+    private void compare(final ByteBuffer src) throws IOException {
+      while (src.hasRemaining()) {
+        ((Buffer) existing).clear().limit(Math.min(src.remaining(), existing.capacity()));
+        final int read = file.read(existing, position);
+        if (read <= 0) {
+          changed = true; // Longer than the file
+          return;
+        }
+        ((Buffer) existing).flip();
+        while (existing.hasRemaining()) {
+          if (existing.get() != src.get(src.position())) {
+            changed = true;
+            return;
+          }
+          ((Buffer) src).position(src.position() + 1);
+          position++;
+        }
+      }
+    }
+
+    /**
+     * @return true if any byte written, or the file was truncated.
+     */
+    private boolean finish() throws IOException {
+      if (position != file.size()) {
+        file.truncate(position);
+        changed = true;
+      }
+      return changed;
+    }
+
+    private void release() {
+      borrowed.close();
+    }
+
+    @Override
+    public boolean isOpen() {
+      return file.isOpen();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * Encodes chars directly from the caller's array into a pooled ByteBuffer.
+   * <br/>
+   * A high surrogate at the end of a write is carried to the next write, so a pair split across chunks is encoded
+   * correctly.
+   */
+  private static final class ChannelWriter extends Writer {
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final CloseableSupplier<ByteBuffer> borrowed = BUFFERS.get();
+    private final ByteBuffer buffer = borrowed.get();
+    private final CharBuffer carry = CharBuffer.allocate(2);
+    private long bytes;
+    private IOException failure;
+    private boolean closed;
+
+    private ChannelWriter(final WritableByteChannel channel, final Charset charset) {
+      this.channel = channel;
+      this.encoder = encoder(charset);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+      checkOpen();
+      final CharBuffer in = CharBuffer.wrap(cbuf, off, len);
+      try {
+        if (carry.position() > 0) {
+          if (!in.hasRemaining())
+            return;
+          carry.put(in.get());
+          ((Buffer) carry).flip();
+          encode(carry, false);
+          carry.compact();
+        }
+        encode(in, false);
+        if (in.hasRemaining())
+          carry.put(in);
+      } catch (IOException e) {
+        throw fail(e);
+      }
+    }
+
+    private void encode(final CharBuffer in, final boolean endOfInput) throws IOException {
+      for (; ; ) {
+        final CoderResult r = encoder.encode(in, buffer, endOfInput);
+        if (r.isUnderflow())
+          return;
+        if (r.isOverflow())
+          drain();
+        else
+          r.throwException();
+      }
+    }
+
+    private void drain() throws IOException {
+      ((Buffer) buffer).flip();
+      while (buffer.hasRemaining())
+        bytes += channel.write(buffer);
+      ((Buffer) buffer).clear();
+    }
+
+    private IOException fail(final IOException e) {
+      if (null == failure)
+        failure = e;
+      return e;
+    }
+
+    private void checkOpen() throws IOException {
+      if (closed)
+        throw new IOException("closed");
+      if (null != failure)
+        throw failure;
+    }
+
+    /**
+     * Only drains to the channel, because the encoder isn't finished until close.
+     */
+    @Override
+    public void flush() throws IOException {
+      checkOpen();
+      try {
+        drain();
+      } catch (IOException e) {
+        throw fail(e);
+      }
+    }
+
+    /**
+     * Finishes encoding, and drains, but doesn't close the channel.
+     */
+    @Override
+    public void close() throws IOException {
+      checkOpen();
+      closed = true;
+      ((Buffer) carry).flip();
+      encode(carry, true);
+      while (encoder.flush(buffer).isOverflow())
+        drain();
+      drain();
+    }
+
+    private void release() {
+      closed = true;
+      borrowed.close();
+    }
+  }
+}
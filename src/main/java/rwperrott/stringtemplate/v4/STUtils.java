@@ -126,11 +126,19 @@ public class STUtils {
     stGroup.registerRenderer(String.class, new StringRenderer());
   }
 
+  /**
+   * Registers StringInvokeRenderer, NumberInvokeRenderer, TemporalInvokeRenderer, and an InvokeDispatcher, in place
+   * of separate ObjectInvokeAdaptor and NumberInvokeAdaptor registrations.
+   * <br/>
+   * NumberInvokeRenderer formats like NumberRenderer, without DecimalFormat patterns; TemporalInvokeRenderer applies
+   * a format to java.time values, which was otherwise ignored.
+   */
   public static void registerAllUtilsExtensions(final @NonNull STGroup stGroup) {
     StringInvokeRenderer.register(stGroup);
-    ObjectInvokeAdaptor.register(stGroup);
+    NumberInvokeRenderer.register(stGroup);
+    TemporalInvokeRenderer.register(stGroup);
     StringInvokeAdaptor.register(stGroup);
-    NumberInvokeAdaptor.register(stGroup);
+    InvokeDispatcher.register(stGroup);
   }
 
   /**
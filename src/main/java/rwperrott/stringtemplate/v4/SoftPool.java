@@ -120,6 +120,8 @@ public final class SoftPool<E> implements CloseableSupplier<CloseableSupplier<E>
           final Node<E> first = h.nextNode; // .next is for ReferenceQueue use
           h.nextNode = h; // help GC
           head = first;
+          // Dequeued, so counted down now, including when returned.
+          count.getAndDecrement();
           final E e = first.get();
           if (e != null) {
             first.clear();
@@ -128,7 +130,6 @@ public final class SoftPool<E> implements CloseableSupplier<CloseableSupplier<E>
             if (validator.test(e)) return e;
             destroyer.accept(e);
           }
-          count.getAndDecrement();
         }
       } finally {
         pollLock.unlock();
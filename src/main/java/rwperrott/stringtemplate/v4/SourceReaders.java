@@ -0,0 +1,146 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Opens group sources for reading, e.g. to scan template line numbers:
+ * <ul>
+ *     <li>a <code>file:</code> URL is read whole through a FileChannel, then closed, and decoded in chunks, into a
+ *     pooled CharBuffer, so a large generated group file isn't copied through an InputStream; it isn't memory-mapped,
+ *     because a mapped file can't be overwritten or deleted on Windows, until the mapping is collected</li>
+ *     <li>any other URL is read through a buffered InputStreamReader</li>
+ * </ul>
+ * Malformed and unmappable bytes are replaced, like InputStreamReader.
+ * <br/>
+ * Only for package use, by STGroupType.
+ *
+ * @author rwperrott
+ */
+final class SourceReaders {
+  private static final int CHUNK_SIZE = 8192;
+  // Buffer methods are called via Buffer, because the JDK 9+ covariant overrides aren't in Java 8.
+  private static final SoftPool<CharBuffer> CHUNKS =
+    SoftPool.<CharBuffer>builder(() -> CharBuffer.allocate(CHUNK_SIZE))
+      .capacity(64)
+      .passivator(b -> ((Buffer) b).clear())
+      .build();
+
+  static Reader open(final @NonNull URL url, final @NonNull String encoding) throws IOException {
+    final Charset charset = Charset.forName(encoding);
+    if ("file".equals(url.getProtocol())) {
+      final Path path;
+      try {
+        path = Paths.get(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        throw new IOException("invalid file URL " + url, e);
+      }
+      try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+        final long size = fc.size();
+        if (size <= Integer.MAX_VALUE) {
+          final ByteBuffer bytes = ByteBuffer.allocate((int) size);
+          while (bytes.hasRemaining() && -1 != fc.read(bytes)) {
+            // Until full or end of file
+          }
+          ((Buffer) bytes).flip();
+          return new DecodingReader(bytes, charset);
+        }
+      }
+    }
+    return new BufferedReader(new InputStreamReader(url.openStream(), charset), CHUNK_SIZE);
+  }
+
+  /**
+   * Decodes a ByteBuffer, a chunk at a time, so chars are only decoded as read.  Not thread-safe, like other Readers.
+   */
+  private static final class DecodingReader extends Reader {
+    private final ByteBuffer bytes;
+    private final CharsetDecoder decoder;
+    private CloseableSupplier<CharBuffer> borrowed;
+    private CharBuffer chars;
+    private boolean decoded;
+    private boolean flushed;
+
+    DecodingReader(final ByteBuffer bytes, final Charset charset) {
+      this.bytes = bytes;
+      this.decoder = charset.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      borrowed = CHUNKS.get();
+      chars = borrowed.get();
+      ((Buffer) chars).flip(); // Empty
+    }
+
+    /**
+     * @return false at the end of the input.
+     */
+    private boolean fill() throws IOException {
+      if (null == chars)
+        throw new IOException("closed");
+      while (!chars.hasRemaining()) {
+        if (flushed)
+          return false;
+        ((Buffer) chars).clear();
+        if (!decoded) {
+          final CoderResult r = decoder.decode(bytes, chars, true);
+          if (r.isError())
+            r.throwException();
+          decoded = r.isUnderflow();
+        }
+        // Only flush once all the bytes are decoded, maybe more than once, if the chunk overflows.
+        if (decoded)
+          flushed = decoder.flush(chars).isUnderflow();
+        ((Buffer) chars).flip();
+      }
+      return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return fill() ? chars.get() : -1;
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+      if (0 == len)
+        return 0;
+      if (!fill())
+        return -1;
+      final int n = Math.min(len, chars.remaining());
+      chars.get(cbuf, off, n);
+      return n;
+    }
+
+    /**
+     * Returns the CharBuffer to the pool.
+     */
+    @Override
+    public void close() {
+      if (null == borrowed)
+        return;
+      chars = null;
+      borrowed.close();
+      borrowed = null;
+    }
+  }
+
+  private SourceReaders() {
+  }
+}
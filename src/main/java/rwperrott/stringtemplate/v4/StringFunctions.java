@@ -4,10 +4,7 @@ import lombok.NonNull;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.StringEscapeUtils;
 import org.apache.commons.text.WordUtils;
-import org.stringtemplate.v4.StringRenderer;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.Locale;
 
 /**
@@ -149,21 +146,26 @@ public final class StringFunctions {
   }
 
   /**
-   * Calls URLEncoder.encode(v, "UTF-8")
+   * Like URLEncoder.encode(v, "UTF-8"), but returns value unchanged when nothing needs encoding.
+   */
+  public static String escapeURL(@NonNull String value) {
+    return Escapers.escapeURL(value);
+  }
+
+  /**
+   * Calls URLEncoder.encode(v, "UTF-8"), despite the name, so existing templates are unchanged; use
+   * Escapers.escapeXML to escape XML.
    */
   public static String escapeXML(@NonNull String value) {
-    try {
-      return URLEncoder.encode(value, "UTF-8");
-    } catch (UnsupportedEncodingException ex) {
-      throw new InternalError(ex);
-    }
+    return Escapers.escapeURL(value);
   }
 
   /**
-   * Calls original StringRenderer::escapeHTML method, even if dubious.
+   * Like original StringRenderer::escapeHTML method, even if dubious, but returns value unchanged when nothing needs
+   * escaping.
    */
   public static String escapeHTML(@NonNull String value) {
-    return StringRenderer.escapeHTML(value);
+    return Escapers.escapeHTML(value);
   }
 
   /**
@@ -5,10 +5,11 @@ import org.stringtemplate.v4.AttributeRenderer;
 import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.StringRenderer;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Locale;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A more power StringRender, which can use compatible instance fields or methods, or methods accepting a string and
@@ -16,6 +17,12 @@ import java.util.Locale;
  * <br/>
  * The current function classes tried: rwperrott.st4.StringFunctions, org.apache.commons.lang3.StringUtils methods
  * and java.lang.String.
+ * <br/>
+ * A format may be a pipeline of functions, separated by '|', each optionally followed by ':' separated arguments,
+ * e.g. <code>format="trim|lower|xml-encode"</code> or <code>format="abbreviate:40|upper"</code>.
+ * <br/>
+ * Each format is compiled once into composed MethodHandles, with and without a Locale, which are cached per format
+ * string, so a hot loop costs one map lookup and one direct invoke, even for a pipeline.
  *
  * @author rwperrott
  */
@@ -23,6 +30,9 @@ public final class StringInvokeRenderer implements AttributeRenderer<String> {
 
   // Have to use a static instance for default use, because already extends a different class.
   public static final StringRenderer DEFAULT_RENDERER = new StringRenderer();
+  private static final MethodType WITH_LOCALE = MethodType.genericMethodType(2);
+  private static final MethodType WITHOUT_LOCALE = MethodType.genericMethodType(1);
+  private static final Resolved NONE = new Resolved(null, null);
 
   static {
     StringFunctions.registerRendererFunctions();
@@ -32,27 +42,22 @@ public final class StringInvokeRenderer implements AttributeRenderer<String> {
     stGroup.registerRenderer(String.class, new StringInvokeRenderer());
   }
 
+  /**
+   * Resolutions cached per formatString, because the value type is always String.
+   */
+  private final Map<String, Resolved> resolved = new ConcurrentHashMap<>();
+
   @Override
   public String toString(final String value, final String formatString, final Locale locale) {
     if (null != formatString) {
-      final String alias = toAlias(formatString);
-      final MemberInvokers mis = TypeFunctions.get(value.getClass(), alias);
+      final Resolved r = resolved.computeIfAbsent(formatString, this::resolve);
       try {
-        List<Object> args;
-        MemberInvoker mi;
-        if (null != locale) {
-          // Try with Locale, when locale not null
-          args = new ArrayList<>(1);
-          args.add(locale);
-          mi = mis.find(true, String.class, args, 1);
-          if (mi != null)
-            return (String) mi.invoke(value, args);
-        }
+        // Try with Locale, when locale not null
+        if (null != locale && null != r.withLocale)
+          return (String) (Object) r.withLocale.invokeExact((Object) value, (Object) locale);
         // Try without Locale
-        args = Collections.emptyList();
-        mi = mis.find(true, String.class, args);
-        if (null != mi)
-          return (String) mi.invoke(value, args);
+        if (null != r.withoutLocale)
+          return (String) (Object) r.withoutLocale.invokeExact((Object) value);
       } catch (Throwable throwable) {
         throw STExceptions.noSuchPropertyInObject(value, formatString, throwable);
       }
@@ -61,6 +66,77 @@ public final class StringInvokeRenderer implements AttributeRenderer<String> {
     return DEFAULT_RENDERER.toString(value, formatString, locale);
   }
 
+  /**
+   * Compiles a pipeline of stages, separated by '|', into chains composed by filterReturnValue, or by
+   * collectArguments for a stage which also takes the Locale.
+   *
+   * @return NONE if any stage isn't a function, so formatString is used by DEFAULT_RENDERER.
+   */
+  private Resolved resolve(final String formatString) {
+    MethodHandle withLocale = null;
+    MethodHandle withoutLocale = null;
+    boolean withoutLocaleComplete = true;
+    for (String stage : formatString.split("\\|", -1)) {
+      final Resolved r = resolveStage(stage);
+      if (null == r)
+        return NONE;
+      withLocale = then(withLocale, null != r.withLocale ? r.withLocale : r.withoutLocale);
+      if (null == r.withoutLocale)
+        withoutLocaleComplete = false;
+      else if (withoutLocaleComplete)
+        withoutLocale = then(withoutLocale, r.withoutLocale);
+    }
+    return new Resolved(withLocale.type().parameterCount() == 2 ? withLocale : null,
+                        withoutLocaleComplete ? withoutLocale : null);
+  }
+
+  /**
+   * @param stage a function name or alias, optionally followed by ':' separated arguments, e.g. "abbreviate:40".
+   * @return handles with the arguments bound, or null if not a function.
+   */
+  private Resolved resolveStage(final String stage) {
+    final String[] parts = stage.split(":", -1);
+    final MemberInvokers mis = TypeFunctions.get(String.class, toAlias(parts[0].trim()));
+    final int n = parts.length - 1;
+    List<Object> args = new ArrayList<>(n + 1);
+    args.addAll(Arrays.asList(parts).subList(1, parts.length));
+    args.add(Locale.ROOT);
+    MemberInvoker mi = mis.find(true, String.class, args, 1);
+    MethodHandle withLocale = null;
+    if (null != mi) {
+      final MethodHandle mh = mi.valueFirstHandle();
+      // Only if a Locale parameter, so never needs conversion.
+      if (mh.type().parameterCount() == n + 2 && mh.type().parameterType(n + 1) == Locale.class)
+        withLocale = bind(mh, args, n).asType(WITH_LOCALE);
+    }
+    args = new ArrayList<>(Arrays.asList(parts).subList(1, parts.length));
+    mi = mis.find(true, String.class, args);
+    final MethodHandle withoutLocale = null == mi ? null : bind(mi.valueFirstHandle(), args, n).asType(WITHOUT_LOCALE);
+    return null == withLocale && null == withoutLocale ? null : new Resolved(withLocale, withoutLocale);
+  }
+
+  /**
+   * @return mh, with the first n converted args bound after the value.
+   */
+  private static MethodHandle bind(final MethodHandle mh, final List<Object> args, final int n) {
+    return 0 == n ? mh : MethodHandles.insertArguments(mh, 1, args.subList(0, n).toArray());
+  }
+
+  /**
+   * @return chain followed by stage, taking the Locale if either does.
+   */
+  private static MethodHandle then(final MethodHandle chain, final MethodHandle stage) {
+    if (null == chain)
+      return stage;
+    if (stage.type().parameterCount() == 1)
+      return MethodHandles.filterReturnValue(chain, stage);
+    // (value, locale) -> stage(chain(value[, locale]), locale)
+    final MethodHandle mh = MethodHandles.collectArguments(stage, 0, chain);
+    return chain.type().parameterCount() == 1
+           ? mh
+           : MethodHandles.permuteArguments(mh, WITH_LOCALE, 0, 1, 1);
+  }
+
   private String toAlias(final String name) {
     switch (name) {
       case "cap":
@@ -77,4 +153,20 @@ public final class StringInvokeRenderer implements AttributeRenderer<String> {
         return name;
     }
   }
+
+  private static final class Resolved {
+    /**
+     * (Object,Object)Object, for invokeExact, or null.
+     */
+    private final MethodHandle withLocale;
+    /**
+     * (Object)Object, for invokeExact, or null.
+     */
+    private final MethodHandle withoutLocale;
+
+    private Resolved(final MethodHandle withLocale, final MethodHandle withoutLocale) {
+      this.withLocale = withLocale;
+      this.withoutLocale = withoutLocale;
+    }
+  }
 }
@@ -0,0 +1,197 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.stringtemplate.v4.STGroup.GROUP_FILE_EXTENSION;
+import static org.stringtemplate.v4.STGroup.TEMPLATE_FILE_EXTENSION;
+
+/**
+ * An index of the group and template files under an STGroupDir root, from one directory walk, or jar listing, so
+ * resolving the source of a template doesn't probe URLs, and fail with an IOException, for every message patch.
+ * <br/>
+ * When a file isn't found, rebuilt only if the modification time of an indexed directory, or of the jar, has changed,
+ * so an added file is found, but a missing name, e.g. an anonymous <code>_subN</code> template per runtime message,
+ * doesn't rescan the tree; a deleted file fails when read.  A modification time within the granularity of coarse file
+ * systems of the last build, or an unknown one, counts as changed.  A name still not found is left to STGroupType to
+ * probe, e.g. for a case-insensitive file system match.  Symbolic links are followed.  A root with any other protocol
+ * isn't indexed.
+ * <br/>
+ * Only for package use, by STGroupType.DIRECTORY.
+ *
+ * @author rwperrott
+ */
+final class TemplateDirIndex {
+  private static final Map<String, TemplateDirIndex> CACHE = new ConcurrentHashMap<>();
+
+  /**
+   * @return the URL of the group file, or template file, which defines templateName, or null if root isn't indexable,
+   * or neither are indexed, so the caller probes, e.g. for a case-insensitive file system match.
+   */
+  static URL resolve(final @NonNull URL root, final @NonNull String groupFileName, final @NonNull String templateFileName)
+    throws IOException {
+    final String base = root.toString().endsWith("/") ? root.toString() : root + "/";
+    final String protocol = root.getProtocol();
+    if (!"file".equals(protocol) && !"jar".equals(protocol))
+      return null;
+    final TemplateDirIndex index = CACHE.computeIfAbsent(base, TemplateDirIndex::new);
+    String path = index.find(groupFileName, templateFileName);
+    if (null == path && index.isChanged()) {
+      index.rebuild();
+      path = index.find(groupFileName, templateFileName);
+    }
+    return null == path ? null : new URL(base + path);
+  }
+
+  /**
+   * In milliseconds; FAT records 2 second modification times.
+   */
+  private static final long GRANULARITY = 2000;
+
+  private static String strip(final String path) {
+    return path.startsWith("/") ? path.substring(1) : path;
+  }
+
+  private final String base;
+  /**
+   * The paths of the group and template files, relative to base, with '/' separators.
+   */
+  private volatile Set<String> paths;
+  /**
+   * The modification time of each indexed directory, or of the jar file, at the last build; null if unknown.
+   */
+  private volatile Map<Path, Long> modified;
+  private volatile long builtAt;
+
+  private TemplateDirIndex(final String base) {
+    this.base = base;
+  }
+
+  private String find(String groupFileName, String templateFileName) throws IOException {
+    Set<String> paths = this.paths;
+    if (null == paths)
+      paths = rebuild();
+    groupFileName = strip(groupFileName);
+    if (!GROUP_FILE_EXTENSION.equals(groupFileName) && paths.contains(groupFileName))
+      return groupFileName;
+    templateFileName = strip(templateFileName);
+    return paths.contains(templateFileName) ? templateFileName : null;
+  }
+
+  private boolean isChanged() {
+    final Map<Path, Long> modified = this.modified;
+    if (null == modified)
+      return true;
+    final long stable = builtAt - GRANULARITY;
+    for (Map.Entry<Path, Long> e : modified.entrySet())
+      try {
+        final long m = Files.getLastModifiedTime(e.getKey()).toMillis();
+        if (m != e.getValue() || m >= stable)
+          return true;
+      } catch (IOException ex) {
+        return true; // Deleted, or not yet created.
+      }
+    return false;
+  }
+
+  private synchronized Set<String> rebuild() throws IOException {
+    final Set<String> paths = new HashSet<>();
+    Map<Path, Long> modified = new HashMap<>();
+    builtAt = System.currentTimeMillis();
+    final URL url = new URL(base);
+    if ("file".equals(url.getProtocol())) {
+      final Path dir;
+      try {
+        dir = Paths.get(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        throw new IOException("invalid root " + base, e);
+      }
+      // A missing root is recorded too, so is found when created.
+      modified.put(dir, -1L);
+      if (Files.isDirectory(dir))
+        walk(dir, paths, modified);
+    } else {
+      final URLConnection c = url.openConnection();
+      if (!(c instanceof JarURLConnection))
+        throw new IOException("not a jar: " + base);
+      final JarURLConnection rc = (JarURLConnection) c;
+      final String prefix = null == rc.getEntryName() ? "" : rc.getEntryName();
+      final URL jarFileURL = rc.getJarFileURL();
+      modified = null;
+      if ("file".equals(jarFileURL.getProtocol()))
+        try {
+          final Path jarFile = Paths.get(jarFileURL.toURI());
+          modified = Collections.singletonMap(jarFile, Files.getLastModifiedTime(jarFile).toMillis());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+          // Unknown, so always rebuilt on a miss.
+        }
+      // Via the jar root, because a jar may not have directory entries.
+      final JarURLConnection jc = (JarURLConnection) new URL("jar:" + jarFileURL + "!/").openConnection();
+      jc.setUseCaches(false);
+      try (JarFile jar = jc.getJarFile()) {
+        for (Enumeration<JarEntry> e = jar.entries(); e.hasMoreElements(); ) {
+          final JarEntry entry = e.nextElement();
+          final String name = entry.getName();
+          if (!entry.isDirectory() && name.startsWith(prefix) && isSource(name))
+            paths.add(name.substring(prefix.length()));
+        }
+      }
+    }
+    this.modified = modified;
+    return this.paths = Collections.unmodifiableSet(paths);
+  }
+
+  /**
+   * Follows symbolic links, like the URL probe; a link loop, or an unreadable directory, is skipped.
+   */
+  private static void walk(final Path dir, final Set<String> paths, final Map<Path, Long> modified) throws IOException {
+    Files.walkFileTree(dir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(final Path d, final BasicFileAttributes attrs) {
+        modified.put(d, attrs.lastModifiedTime().toMillis());
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          final String path = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+          if (isSource(path))
+            paths.add(path);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static boolean isSource(final String path) {
+    return path.endsWith(GROUP_FILE_EXTENSION) || path.endsWith(TEMPLATE_FILE_EXTENSION);
+  }
+}
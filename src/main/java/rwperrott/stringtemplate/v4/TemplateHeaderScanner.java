@@ -0,0 +1,111 @@
+package rwperrott.stringtemplate.v4;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Finds the line number of each template header in a group source, in a single pass over a pooled char chunk, without
+ * splitting lines into Strings, or running a regex per line.
+ * <br/>
+ * Matches the same lines as STUtils.templateMatcher, i.e. <code>name(args) ::= ...</code> at the start of a line, with
+ * lines ended by <code>\n</code>, <code>\r</code>, or <code>\r\n</code>, like LineNumberReader.
+ * <br/>
+ * Only for package use, by STContext.
+ *
+ * @author rwperrott
+ */
+final class TemplateHeaderScanner {
+  private static final int LINE_START = 0;
+  private static final int NAME = 1;
+  private static final int ARGS = 2;
+  private static final int SPACES = 3;
+  private static final int COLON = 4;
+  private static final int EQUALS = 5;
+  private static final int MATCHED = 6;
+  private static final int SKIP = 7;
+
+  /**
+   * @return the 1-based number of the line after each header, where the text of a <code>&lt;&lt;</code> template
+   * starts, like the LineNumberReader scan it replaced, keyed by template name, with -1 as the default.
+   */
+  static Object2IntMap<String> scan(final @NonNull Reader r) throws IOException {
+    try (CloseableSupplier<char[]> chunk = ChunkedSTWriter.CHUNKS.get()) {
+      return scan(r, chunk.get());
+    }
+  }
+
+  static Object2IntMap<String> scan(final Reader r, final char[] buf) throws IOException {
+    final Object2IntMap<String> lines = new Object2IntOpenHashMap<>();
+    lines.defaultReturnValue(-1);
+    final StringBuilder name = new StringBuilder();
+    int line = 1;
+    int state = LINE_START;
+    boolean afterCR = false;
+    for (int n; -1 != (n = r.read(buf, 0, buf.length)); ) {
+      for (int i = 0; i < n; i++) {
+        final char c = buf[i];
+        if (c == '\n' || c == '\r') {
+          if (c == '\n' && afterCR) {
+            afterCR = false; // The \n of \r\n
+            continue;
+          }
+          afterCR = c == '\r';
+          if (state == MATCHED)
+            lines.put(name.toString(), line + 1);
+          line++;
+          state = LINE_START;
+          continue;
+        }
+        afterCR = false;
+        switch (state) {
+          case LINE_START:
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+              name.setLength(0);
+              name.append(c);
+              state = NAME;
+            } else
+              state = SKIP;
+            break;
+          case NAME:
+            if (c == '(')
+              state = ARGS;
+            else if (c == ' ' || c == ':')
+              state = SKIP;
+            else
+              name.append(c);
+            break;
+          case ARGS:
+            if (c == ')')
+              state = SPACES;
+            else if (c == ' ' || c == ':')
+              state = SKIP;
+            break;
+          case SPACES:
+            if (c == ':')
+              state = COLON;
+            else if (c != ' ')
+              state = SKIP;
+            break;
+          case COLON:
+            state = c == ':' ? EQUALS : SKIP;
+            break;
+          case EQUALS:
+            state = c == '=' ? MATCHED : SKIP;
+            break;
+          default: // Matched, or skipping, until the end of the line
+            break;
+        }
+      }
+    }
+    if (state == MATCHED)
+      lines.put(name.toString(), line + 1);
+    return lines;
+  }
+
+  private TemplateHeaderScanner() {
+  }
+}
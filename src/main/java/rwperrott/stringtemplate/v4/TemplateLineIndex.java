@@ -0,0 +1,70 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.compiler.CompiledST;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The start offset of each line of a template, so the line and column of a source offset are found by a binary search,
+ * rather than by counting from the start, for every runtime message.
+ * <br/>
+ * Lines are ended by <code>\n</code>, <code>\r</code>, or <code>\r\n</code>.  Cached per CompiledST, weakly, so a
+ * reloaded or unloaded template is forgotten; anonymous sub-templates share the text of their enclosing template, so
+ * have equal, but separate, indexes.  Thread-safe.
+ *
+ * @author rwperrott
+ */
+@SuppressWarnings("unused")
+public final class TemplateLineIndex {
+  private static final Map<CompiledST, TemplateLineIndex> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+  public static TemplateLineIndex of(final @NonNull CompiledST impl) {
+    return CACHE.computeIfAbsent(impl, k -> new TemplateLineIndex(k.template));
+  }
+
+  /**
+   * The offset of the first char of each line, ascending, starting with 0.
+   */
+  private final int[] starts;
+
+  public TemplateLineIndex(final @NonNull String text) {
+    int[] a = new int[16];
+    int n = 1;
+    for (int i = 0, len = text.length(); i < len; i++) {
+      final char c = text.charAt(i);
+      if (c != '\n' && c != '\r')
+        continue;
+      if (c == '\r' && i + 1 < len && text.charAt(i + 1) == '\n')
+        i++;
+      if (n == a.length)
+        a = Arrays.copyOf(a, n * 2);
+      a[n++] = i + 1;
+    }
+    starts = Arrays.copyOf(a, n);
+  }
+
+  public int lineCount() {
+    return starts.length;
+  }
+
+  /**
+   * @return the 0-based line of offset.
+   */
+  public int line(final int offset) {
+    if (offset < 0)
+      throw new IndexOutOfBoundsException("offset " + offset);
+    final int i = Arrays.binarySearch(starts, offset);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  /**
+   * @return the 0-based column of offset, in its line.
+   */
+  public int column(final int offset) {
+    return offset - starts[line(offset)];
+  }
+}
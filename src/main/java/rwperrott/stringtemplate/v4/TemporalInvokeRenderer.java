@@ -0,0 +1,125 @@
+package rwperrott.stringtemplate.v4;
+
+import lombok.NonNull;
+import org.stringtemplate.v4.AttributeRenderer;
+import org.stringtemplate.v4.STGroup;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A java.time renderer, because ST4's DateRenderer only supports Date and Calendar, which compiles each
+ * (format, locale, value kind) once into an immutable, thread-safe, DateTimeFormatter, and caches it.
+ * <br/>
+ * Formats, like DateRenderer:
+ * <ul>
+ *     <li><code>short</code>, <code>medium</code>, <code>long</code>, or <code>full</code>, localized for the date
+ *     and/or time fields of the value; <code>date:</code> or <code>time:</code> prefixed for only the date or
+ *     time</li>
+ *     <li>the name of a DateTimeFormatter constant, e.g. <code>ISO_LOCAL_DATE</code></li>
+ *     <li>otherwise a DateTimeFormatter pattern, e.g. <code>yyyy-MM-dd</code></li>
+ * </ul>
+ * An Instant is formatted in UTC, because it has no zone, and the output should not depend on the host.
+ *
+ * @author rwperrott
+ */
+public final class TemporalInvokeRenderer implements AttributeRenderer<TemporalAccessor> {
+  private static final int DATE = 1;
+  private static final int TIME = 2;
+  private static final int NO_ZONE = 4;
+  private static final Map<String, DateTimeFormatter> CONSTANTS = new HashMap<>();
+
+  static {
+    for (Field f : DateTimeFormatter.class.getFields()) {
+      if (Modifier.isStatic(f.getModifiers()) && f.getType() == DateTimeFormatter.class)
+        try {
+          CONSTANTS.put(f.getName(), (DateTimeFormatter) f.get(null));
+        } catch (IllegalAccessException ignore) {
+        }
+    }
+  }
+
+  public static void register(final @NonNull STGroup stGroup) {
+    stGroup.registerRenderer(TemporalAccessor.class, new TemporalInvokeRenderer());
+  }
+
+  private final Map<FormatKey, DateTimeFormatter> compiled = new ConcurrentHashMap<>();
+
+  @Override
+  public String toString(final TemporalAccessor value, final String formatString, final Locale locale) {
+    if (null == formatString)
+      return value.toString();
+    return compiled
+      .computeIfAbsent(new FormatKey(formatString, locale, kind(value)), TemporalInvokeRenderer::compile)
+      .format(value);
+  }
+
+  private static int kind(final TemporalAccessor value) {
+    int kind = 0;
+    if (value.isSupported(ChronoField.EPOCH_DAY))
+      kind |= DATE;
+    if (value.isSupported(ChronoField.NANO_OF_DAY))
+      kind |= TIME;
+    if (0 == kind && value.isSupported(ChronoField.INSTANT_SECONDS))
+      kind = DATE | TIME | NO_ZONE; // An Instant
+    return kind;
+  }
+
+  private static DateTimeFormatter compile(final FormatKey key) {
+    String format = key.format;
+    int kind = key.variant;
+    if (format.startsWith("date:")) {
+      format = format.substring(5);
+      kind &= ~TIME;
+    } else if (format.startsWith("time:")) {
+      format = format.substring(5);
+      kind &= ~DATE;
+    }
+    final FormatStyle style = style(format);
+    DateTimeFormatter f;
+    if (null != style)
+      switch (kind & (DATE | TIME)) {
+        case DATE:
+          f = DateTimeFormatter.ofLocalizedDate(style);
+          break;
+        case TIME:
+          f = DateTimeFormatter.ofLocalizedTime(style);
+          break;
+        default:
+          f = DateTimeFormatter.ofLocalizedDateTime(style);
+      }
+    else {
+      f = CONSTANTS.get(format);
+      if (null == f)
+        f = DateTimeFormatter.ofPattern(format);
+    }
+    f = f.withLocale(null == key.locale ? Locale.getDefault() : key.locale);
+    if (0 != (kind & NO_ZONE) && null == f.getZone())
+      f = f.withZone(ZoneOffset.UTC);
+    return f;
+  }
+
+  private static FormatStyle style(final String name) {
+    switch (name) {
+      case "short":
+        return FormatStyle.SHORT;
+      case "medium":
+        return FormatStyle.MEDIUM;
+      case "long":
+        return FormatStyle.LONG;
+      case "full":
+        return FormatStyle.FULL;
+      default:
+        return null;
+    }
+  }
+}
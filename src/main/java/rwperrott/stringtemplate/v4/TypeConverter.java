@@ -2,6 +2,8 @@ package rwperrott.stringtemplate.v4;
 
 import lombok.NonNull;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
@@ -33,6 +35,12 @@ public final class TypeConverter implements Comparable<TypeConverter>, UnaryOper
   private static final Pattern BOOL = Pattern.compile("^((t|true)|f|false)$", Pattern.CASE_INSENSITIVE);
   private static final Map<Class<?>, TypeConverter> CONVERTER_MAP;
   private static final UnaryOperator<Object> UNSUPPORTED = v -> null;
+  /**
+   * Interned signatures, so that identical TypeConverter arrays are shared by all MemberInvokers; held weakly, so that
+   * signatures only used by evicted types can be collected.
+   */
+  private static final Map<Signature, Signature> SIGNATURES = new HashMap<>();
+  private static final ReferenceQueue<TypeConverter[]> COLLECTED = new ReferenceQueue<>();
 
   static {
     // Create WHOLE_SIMPLE_NUMBERS, for all whole simple number Types.
@@ -145,6 +153,72 @@ public final class TypeConverter implements Comparable<TypeConverter>, UnaryOper
     return typeConverters;
   }
 
+  /**
+   * Returns the shared instance of an equal signature, so must never be modified after interning.
+   * <br/>
+   * Used by MemberInvoker
+   *
+   * @param typeConverters a signature, which may become the shared instance.
+   * @return the shared signature.
+   */
+  static TypeConverter[] intern(@NonNull TypeConverter[] typeConverters) {
+    if (typeConverters.length == 0)
+      return NONE;
+    synchronized (SIGNATURES) {
+      expungeCollected();
+      final Signature signature = new Signature(typeConverters, COLLECTED);
+      final Signature interned = SIGNATURES.get(signature);
+      final TypeConverter[] shared = null == interned ? null : interned.get();
+      if (null != shared)
+        return shared;
+      SIGNATURES.put(signature, signature);
+      return typeConverters;
+    }
+  }
+
+  /**
+   * Used by TypeFunctions.counts.
+   */
+  static int internedCount() {
+    synchronized (SIGNATURES) {
+      expungeCollected();
+      return SIGNATURES.size();
+    }
+  }
+
+  // Only called when synchronized on SIGNATURES.
+  private static void expungeCollected() {
+    for (Object ref; null != (ref = COLLECTED.poll()); )
+      SIGNATURES.remove(ref);
+  }
+
+  /**
+   * A weak key for SIGNATURES, equal to another by content, until collected, then only to itself.
+   */
+  private static final class Signature extends WeakReference<TypeConverter[]> {
+    private final int hash;
+
+    private Signature(final TypeConverter[] typeConverters, final ReferenceQueue<TypeConverter[]> queue) {
+      super(typeConverters, queue);
+      this.hash = Arrays.hashCode(typeConverters);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof Signature) || hash != ((Signature) o).hash)
+        return false;
+      final TypeConverter[] a = get();
+      return null != a && Arrays.equals(a, ((Signature) o).get());
+    }
+  }
+
   /**
    * Tests if type a simple whole number.
    * <p/>
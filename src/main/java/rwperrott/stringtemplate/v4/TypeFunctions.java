@@ -14,41 +14,76 @@ import java.util.*;
  */
 public final class TypeFunctions {
 
-  private static final Map<Class<?>, ByName> FOR_TYPE = new HashMap<>();
+  /**
+   * Weighted by member name count; types with registered function classes are pinned.
+   */
+  private static final BoundedCache<Class<?>, ByName> FOR_TYPE =
+    new BoundedCache<>("TypeFunctions", Map::size, byName -> byName.registered);
+  /**
+   * Function classes registered for interfaces, added to each implementing class when cached, so it isn't pinned.
+   */
+  private static final Map<Class<?>, List<Class<?>>> FOR_INTERFACE = new LinkedHashMap<>();
+
+  /**
+   * Bound the memory used by the types, e.g. for dynamic model classes from proxies, lambdas or generated classes.
+   *
+   * @param maximumWeight the maximum total member name count of the unpinned cached types.
+   */
+  public static void maximumWeight(final long maximumWeight) {
+    FOR_TYPE.maximumWeight(maximumWeight);
+  }
+
+  public static CacheStats stats() {
+    return FOR_TYPE.stats();
+  }
 
   /**
-   * @param valueType       the main parameter type for the static function methods
+   * An interface's function classes are only added to implementing classes cached after registration, and not to
+   * those inheriting them from a superclass.
+   *
+   * @param valueType       the main parameter type for the static function methods, maybe an interface
    * @param functionClasses the classes containing the static function methods
    */
   @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
   public static void registerFunctionClasses(final @NonNull Class<?> valueType, Class<?>... functionClasses) {
-    final ByName byName = get(valueType);
-    if (null != functionClasses)
+    if (valueType.isInterface()) {
+      if (null != functionClasses)
+        synchronized (FOR_INTERFACE) {
+          FOR_INTERFACE.computeIfAbsent(valueType, k -> new ArrayList<>()).addAll(Arrays.asList(functionClasses));
+        }
+      return;
+    }
+    // Pinned before it can be evicted, even by its own insertion.
+    final ByName byName = FOR_TYPE.computeIfAbsent(valueType, TypeFunctions::newByName, b -> b.registered = true);
+    if (null != functionClasses) {
       synchronized (byName) {
         for (Class<?> functionClass : functionClasses)
           byName.register(functionClass);
       }
-  }
-
-  private static ByName get0(Class<?> valueType) {
-    // Have to split get and put to avoid ConcurrentModificationException.
-    ByName byName = FOR_TYPE.get(valueType);
-    if (null != byName)
-      return byName;
-    ByName superInstance = null;
-    final Class<?> superType = valueType.getSuperclass();
-    if (null != superType) {
-      superInstance = get0(superType);
+      FOR_TYPE.reweigh(valueType); // Grown by the function classes
     }
-    byName = new ByName(valueType, superInstance);
-    FOR_TYPE.put(valueType, byName);
-    return byName;
   }
 
   private static ByName get(Class<?> valueType) {
-    synchronized (FOR_TYPE) {
-      return get0(valueType);
+    return FOR_TYPE.computeIfAbsent(valueType, TypeFunctions::newByName);
+  }
+
+  // BoundedCache.computeIfAbsent allows the recursive call for superType.
+  // A reference array class, other than Object[], inherits from Object[], for the ArrayFunctions.
+  private static ByName newByName(Class<?> valueType) {
+    final Class<?> superType = valueType.isArray() && !valueType.getComponentType().isPrimitive()
+                               && Object[].class != valueType
+                               ? Object[].class
+                               : valueType.getSuperclass();
+    final ByName byName = new ByName(valueType, null == superType ? null : get(superType));
+    synchronized (FOR_INTERFACE) {
+      FOR_INTERFACE.forEach((interfaceType, functionClasses) -> {
+        if (interfaceType.isAssignableFrom(valueType)
+            && (null == superType || !interfaceType.isAssignableFrom(superType)))
+          functionClasses.forEach(byName::register);
+      });
     }
+    return byName;
   }
 
   @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
@@ -63,6 +98,69 @@ public final class TypeFunctions {
     }
   }
 
+  /**
+   * Counts of the cached types, member names, and MemberInvokers, to show how much sharing occurs; counts, not bytes.
+   */
+  @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
+  public static Counts counts() {
+    final int[] names = {0};
+    final int[] invokers = {0};
+    final Set<MemberInvoker> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+    FOR_TYPE.forEachValue(byName -> {
+      synchronized (byName) {
+        names[0] += byName.size();
+        for (MemberInvokersImpl mis : byName.values()) {
+          invokers[0] += mis.size();
+          mis.forEach(distinct::add);
+        }
+      }
+    });
+    return new Counts(FOR_TYPE.size(), ClassMembers.stats().size, names[0], invokers[0], distinct.size(),
+                      TypeConverter.internedCount());
+  }
+
+  /**
+   * An immutable snapshot of counts().
+   * <br/>
+   * <code>invokers</code> counts all the list entries, <code>distinctInvokers</code> counts unique instances, and
+   * <code>signatures</code> counts interned TypeConverter arrays.
+   */
+  public static final class Counts {
+    public final int valueTypes;
+    public final int classMembers;
+    public final int names;
+    public final int invokers;
+    public final int distinctInvokers;
+    public final int signatures;
+
+    private Counts(final int valueTypes,
+                   final int classMembers,
+                   final int names,
+                   final int invokers,
+                   final int distinctInvokers,
+                   final int signatures) {
+      this.valueTypes = valueTypes;
+      this.classMembers = classMembers;
+      this.names = names;
+      this.invokers = invokers;
+      this.distinctInvokers = distinctInvokers;
+      this.signatures = signatures;
+    }
+
+    @Override
+    public String toString() {
+      final ToStringBuilder t = new ToStringBuilder("TypeFunctions.Counts", true);
+      t.add("valueTypes", valueTypes);
+      t.add("classMembers", classMembers);
+      t.add("names", names);
+      t.add("invokers", invokers);
+      t.add("distinctInvokers", distinctInvokers);
+      t.add("signatures", signatures);
+      t.complete();
+      return t.toString();
+    }
+  }
+
   private TypeFunctions() {
   }
 
@@ -85,6 +183,10 @@ public final class TypeFunctions {
     private final Set<Class<?>> dejaVu = Collections.synchronizedSet(new HashSet<>());
 
     private final Class<?> valueType;
+    /**
+     * Set by registerFunctionClasses, to pin this in FOR_TYPE, because function classes can't be re-registered.
+     */
+    private volatile boolean registered;
 
     @SuppressWarnings("LeakingThisInConstructor")
     private ByName(final Class<?> valueType, final ByName superInstance) {
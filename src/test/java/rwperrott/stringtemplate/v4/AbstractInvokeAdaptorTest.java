@@ -2,6 +2,13 @@ package rwperrott.stringtemplate.v4;
 
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertSame;
 import static rwperrott.stringtemplate.v4.Test.test;
 import static rwperrott.stringtemplate.v4.ValueTemplateRenderer.*;
 
@@ -24,6 +31,34 @@ public class AbstractInvokeAdaptorTest {
         test("o7").v(new String[]{"1", "2", "3"}).p("toList").w(trunc).assertEquals("12");
         // Test array toSortedList
         test("o8").v(new String[]{"2", "1", "3"}).p("toSortedList").assertEquals("123");
+        // Test direct array access
+        test("o9").v(new int[]{1, 2, 3}).p("length").assertEquals("3");
+        test("o10").v(new int[]{1, 2, 3}).p("first").assertEquals("1");
+        test("o11").v(new long[]{1, 2, 3}).p("last").assertEquals("3");
+        test("o12").v(new byte[]{1, 2, 3}).p("get").p("1").assertEquals("2");
+        test("o13").v(new byte[]{1, 2, 3}).p("get").p("-1").assertEquals("3");
+        test("o14").v(new String[]{"1", "2", "3"}).p("slice").p("1").p("3").assertEquals("23");
+        test("o15").v(new double[]{1, 2, 3}).p("slice").p("0").p("-1").w(length).assertEquals("2");
+        // Other reference array classes, including nested arrays, inherit them from Object[]
+        test("o15a").v(new int[][]{{1}, {2, 3}}).p("last").p("length").assertEquals("2");
+        // Array functions are only for arrays
+        test("o16").v("abc").p("length").assertEquals("3");
+        assertSame(TypeFunctions.get(Object.class, "slice"), MemberInvokers.NONE);
+        assertSame(TypeFunctions.get(String.class, "first"), MemberInvokers.NONE);
+        // Test pipeline functions
+        final List<String> words = Arrays.asList("a", "", "bb", "c", "dd");
+        test("o17").v(words).p("filterBy").p("length").p("1").assertEquals("ac");
+        test("o18").v(words).p("distinctBy").p("length").assertEquals("abb");
+        test("o19").v(words).p("take").p("3").assertEquals("abb");
+        test("o20").v(words).p("skip").p("3").assertEquals("cdd");
+        test("o21").v(words).p("chunk").p("2").w(length).assertEquals("3");
+        test("o22").v(words).p("groupBy").p("length").w(length).assertEquals("3");
+        test("o23").v(Arrays.asList(Collections.singletonMap("on", true), Collections.singletonMap("on", false)))
+                   .p("filter").p("on").w(length).assertEquals("1");
+        // Test single-pass sources
+        test("o24").v(Stream.of("a", "b", "c")).p("toIterable").assertEquals("abc");
+        test("o25").v(IntStream.iterate(0, i -> i + 1)).p("take").p("3").assertEquals("012");
+        test("o26").v(Arrays.asList("a", "b").iterator()).p("toIterable").w(length).assertEquals("2");
         System.out.println("testObjectAdapter Passed");
     }
 
@@ -44,6 +79,8 @@ public class AbstractInvokeAdaptorTest {
         // This revealed the match all, never convert, bug for equals(Object), which caused erroneous false result.
         test("n13").v(123).p("equals").p("123").assertEquals("true");
         test("n14").v(123).p("equals").p("124").assertEquals("false");
+        // Chained properties use the ModelAdaptor for the result type, so Number aliases work.
+        test("n15").v(123).p("add").p("1").p("inc").assertEquals("125");
         System.out.println("testNumberAdapter Passed");
     }
 
@@ -0,0 +1,101 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupString;
+import org.stringtemplate.v4.STWriter;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.expectThrows;
+
+/**
+ * @author rwperrott
+ */
+public class ChunkedSTWriterTest {
+  private static final String GROUP =
+    "class(name, fields) ::= <<\n" +
+    "class <name> {\n" +
+    "  <fields:field(); separator=\"\\n\">\n" +
+    "  String[] values = {<fields:{f | '<f>'}; wrap, anchor, separator=\", \">};\n" +
+    "}\n" +
+    ">>\n" +
+    "field(f) ::= <<\n" +
+    "private String <f>;\n" +
+    "  // <f>\r\n" +
+    ">>\n";
+
+  private static ST newST(final int fields) {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final ST st = stGroup.getInstanceOf("class");
+    st.add("name", "Big");
+    final List<String> names = new ArrayList<>();
+    for (int i = 0; i < fields; i++)
+      names.add("field" + i);
+    st.add("fields", names);
+    return st;
+  }
+
+  private static void render(final ST st, final STWriter w, final int lineWidth) {
+    w.setLineWidth(lineWidth);
+    st.write(w, Locale.ROOT);
+  }
+
+  @Test
+  public void testLikeAutoIndentWriter() throws Exception {
+    for (int fields : new int[]{0, 1, 10, 2000})
+      for (int lineWidth : new int[]{STWriter.NO_WRAP, 20, 80})
+        for (String newline : new String[]{"\n", "\r\n"}) {
+          final ST st = newST(fields);
+          final StringWriter expected = new StringWriter();
+          final AutoIndentWriter aw = new AutoIndentWriter(expected, newline);
+          render(st, aw, lineWidth);
+          try (ChunkedSTWriter cw = new ChunkedSTWriter(newline)) {
+            render(st, cw, lineWidth);
+            assertEquals(cw.toString(), expected.toString());
+            assertEquals(cw.index(), aw.index());
+            assertEquals(cw.length(), expected.toString().length());
+            final StringWriter out = new StringWriter();
+            cw.writeTo(out);
+            assertEquals(out.toString(), expected.toString());
+          }
+          // Streaming
+          final StringWriter sink = new StringWriter();
+          try (ChunkedSTWriter cw = new ChunkedSTWriter(sink, newline)) {
+            render(st, cw, lineWidth);
+          }
+          assertEquals(sink.toString(), expected.toString());
+        }
+  }
+
+  @Test
+  public void testWriteTo() throws Exception {
+    final ST st = newST(2000);
+    final String expected = st.render();
+    try (ChunkedSTWriter cw = new ChunkedSTWriter("\n")) {
+      render(st, cw, STWriter.NO_WRAP);
+      final StringWriter out = new StringWriter();
+      cw.writeTo(out);
+      assertEquals(out.toString(), expected);
+    }
+    // Streaming, so only flush writes, once.
+    final StringWriter sink = new StringWriter();
+    try (ChunkedSTWriter cw = new ChunkedSTWriter(sink, "\n")) {
+      render(st, cw, STWriter.NO_WRAP);
+      expectThrows(IllegalStateException.class, () -> cw.writeTo(sink));
+    }
+    assertEquals(sink.toString(), expected);
+  }
+
+  @Test
+  public void testRender() {
+    final ST st = newST(3);
+    assertEquals(ChunkedSTWriter.render(st), st.render());
+  }
+}
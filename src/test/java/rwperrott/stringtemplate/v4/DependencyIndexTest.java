@@ -0,0 +1,111 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupFile;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author rwperrott
+ */
+public class DependencyIndexTest {
+  private static void write(final Path file, final String text) throws IOException {
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<RenderScheduler.Result> run(final Path dir,
+                                                  final List<RenderScheduler.Job> jobs,
+                                                  final Path indexFile) throws Exception {
+    // A new STGroup per build, like a new Maven build.
+    final STGroup stGroup = new STGroupFile(dir.resolve("main.stg").toString());
+    final DependencyIndex index = DependencyIndex.load(indexFile);
+    final List<RenderScheduler.Result> results = new RenderScheduler(stGroup).dependencyIndex(index).run(jobs);
+    index.save(indexFile);
+    return results;
+  }
+
+  @Test
+  public void testIncremental() throws Exception {
+    final Path dir = Files.createTempDirectory("DependencyIndexTest");
+    try {
+      write(dir.resolve("main.stg"),
+            "import \"lib.stg\"\n" +
+            "a(x) ::= \"A <x> <b(x)>\"\n" +
+            "c(x) ::= \"C <x>\"\n");
+      write(dir.resolve("lib.stg"), "b(x) ::= \"B <x>\"\n");
+      final Path input = dir.resolve("input.txt");
+      write(input, "1");
+      final Path indexFile = dir.resolve("index.txt");
+      final List<RenderScheduler.Job> jobs = Arrays.asList(
+        new RenderScheduler.Job("a", Collections.singletonMap("x", 1), dir.resolve("a.out")),
+        new RenderScheduler.Job("c", Collections.singletonMap("x", 2), dir.resolve("c.out")),
+        new RenderScheduler.Job("c", Collections.singletonMap("x", 3), dir.resolve("d.out"),
+                                Collections.singletonList(input)));
+      assertEquals(RenderScheduler.summary(run(dir, jobs, indexFile)), "3 written, 0 skipped, 0 failed");
+      assertEquals(new String(Files.readAllBytes(dir.resolve("a.out")), StandardCharsets.UTF_8), "A 1 B 1");
+      final Set<String> dependencies = DependencyIndex.load(indexFile).dependencies(dir.resolve("a.out"));
+      assertEquals(dependencies.size(), 2, dependencies.toString());
+      assertTrue(dependencies.stream().anyMatch(d -> d.endsWith("lib.stg#/b")), dependencies.toString());
+
+      assertEquals(RenderScheduler.summary(run(dir, jobs, indexFile)), "0 written, 3 skipped, 0 failed");
+
+      // Only a uses b.
+      write(dir.resolve("lib.stg"), "b(x) ::= \"b <x>\"\n");
+      List<RenderScheduler.Result> results = run(dir, jobs, indexFile);
+      assertEquals(RenderScheduler.summary(results), "1 written, 2 skipped, 0 failed");
+      assertTrue(results.get(0).isWritten());
+      assertEquals(new String(Files.readAllBytes(dir.resolve("a.out")), StandardCharsets.UTF_8), "A 1 b 1");
+
+      // Only d reads input.
+      write(input, "22");
+      results = run(dir, jobs, indexFile);
+      assertEquals(RenderScheduler.summary(results), "1 written, 2 skipped, 0 failed");
+      assertTrue(results.get(2).isWritten());
+
+      // A template changed, in a group with other templates, only makes its users stale.
+      write(dir.resolve("main.stg"),
+            "import \"lib.stg\"\n" +
+            "a(x) ::= \"A <x> <b(x)>\"\n" +
+            "c(x) ::= \"C: <x>\"\n");
+      assertEquals(RenderScheduler.summary(run(dir, jobs, indexFile)), "2 written, 1 skipped, 0 failed");
+
+      Files.delete(dir.resolve("c.out"));
+      assertEquals(RenderScheduler.summary(run(dir, jobs, indexFile)), "1 written, 2 skipped, 0 failed");
+
+      // An unchanged imported template, since overridden by the main group.
+      write(dir.resolve("main.stg"),
+            "import \"lib.stg\"\n" +
+            "a(x) ::= \"A <x> <b(x)>\"\n" +
+            "b(x) ::= \"main <x>\"\n" +
+            "c(x) ::= \"C: <x>\"\n");
+      final DependencyIndex index = DependencyIndex.load(indexFile);
+      assertTrue(index.isStale(dir.resolve("a.out"), new STGroupFile(dir.resolve("main.stg").toString())));
+      assertEquals(RenderScheduler.summary(run(dir, jobs, indexFile)), "1 written, 2 skipped, 0 failed");
+      assertEquals(new String(Files.readAllBytes(dir.resolve("a.out")), StandardCharsets.UTF_8), "A 1 main 1");
+    } finally {
+      try (Stream<Path> files = Files.list(dir)) {
+        files.forEach(p -> {
+          try {
+            Files.delete(p);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+      Files.delete(dir);
+    }
+  }
+}
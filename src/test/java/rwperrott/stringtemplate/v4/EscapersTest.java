@@ -0,0 +1,68 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.StringRenderer;
+import org.testng.annotations.Test;
+
+import java.io.StringWriter;
+import java.net.URLEncoder;
+import java.util.Random;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+/**
+ * @author rwperrott
+ */
+public class EscapersTest {
+  private static final String[] SAMPLES = {
+    "", "plain", "a b", "<a href=\"x\">&amp;</a>", "tab\tcr\rlf\n", "\u0001\u007f", "caf\u00e9",
+    "\u20ac\ud83d\ude00", "bad\ud83d", "50%+10*2_-.~!'()"
+  };
+
+  @Test
+  public void testUnchanged() {
+    final String s = "nothing_to-escape.123";
+    assertSame(Escapers.escapeXML(s), s);
+    assertSame(Escapers.escapeHTML(s), s);
+    assertSame(Escapers.escapeURL(s), s);
+  }
+
+  @Test
+  public void testLikeOriginals() throws Exception {
+    final Random random = new Random(1);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.setLength(0);
+      for (int j = random.nextInt(20); j > 0; j--)
+        sb.append((char) (random.nextBoolean() ? random.nextInt(0x80) : random.nextInt(0x10000)));
+      check(sb.toString());
+    }
+    for (String s : SAMPLES)
+      check(s);
+    assertEquals(Escapers.escapeXML("<a b='c'>&\"</a>"), "&lt;a b=&apos;c&apos;&gt;&amp;&quot;&lt;/a&gt;");
+  }
+
+  @Test
+  public void testReusedBuilder() throws Exception {
+    // Larger than the kept builder, then small again.
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20000; i++)
+      sb.append("a&b ");
+    final String large = sb.toString();
+    assertEquals(Escapers.escapeHTML(large), StringRenderer.escapeHTML(large));
+    assertEquals(Escapers.escapeURL(large), URLEncoder.encode(large, "UTF-8"));
+    assertEquals(Escapers.escapeXML("a&b"), "a&amp;b");
+  }
+
+  private static void check(final String s) throws Exception {
+    assertEquals(Escapers.escapeHTML(s), StringRenderer.escapeHTML(s), s);
+    assertEquals(Escapers.escapeURL(s), URLEncoder.encode(s, "UTF-8"), s);
+    // Streaming versions write the same.
+    final StringWriter w = new StringWriter();
+    Escapers.escapeHTML(s, w);
+    assertEquals(w.toString(), StringRenderer.escapeHTML(s), s);
+    w.getBuffer().setLength(0);
+    Escapers.escapeURL(s, w);
+    assertEquals(w.toString(), URLEncoder.encode(s, "UTF-8"), s);
+  }
+}
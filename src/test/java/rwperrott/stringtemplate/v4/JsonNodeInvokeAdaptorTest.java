@@ -0,0 +1,100 @@
+package rwperrott.stringtemplate.v4;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.stringtemplate.v4.AutoIndentWriter;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STErrorListener;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupString;
+import org.stringtemplate.v4.misc.ErrorBuffer;
+import org.stringtemplate.v4.misc.STMessage;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+/**
+ * @author rwperrott
+ */
+public class JsonNodeInvokeAdaptorTest {
+  private static final String JSON =
+    "{\"name\":\"abc\",\"size\":\"big\",\"count\":123,\"on\":true,\"off\":false,\"items\":[1,2,3],"
+    + "\"people\":[{\"name\":\"x\"},{\"name\":\"y\"}]}";
+
+  private static String render(String template) throws Exception {
+    final JsonNode json = new ObjectMapper().readTree(JSON);
+    final STGroup stg = new STGroupString("t(json) ::= <%" + template + "%>");
+    STUtils.registerAllUtilsExtensions(stg);
+    JsonNodeInvokeAdaptor.register(stg);
+    final ST st = stg.getInstanceOf("t");
+    st.add("json", json);
+    return st.render();
+  }
+
+  @Test
+  public void test() throws Exception {
+    // Fields, hiding members
+    assertEquals(render("<json.name>"), "abc");
+    assertEquals(render("<json.size>"), "big");
+    assertEquals(render("<json.missing>"), "");
+    // Scalars, with Number and String functions
+    assertEquals(render("<json.count.inc>"), "124");
+    assertEquals(render("<json.name.upper>"), "ABC");
+    assertEquals(render("<if(json.on)>1<endif><if(json.off)>2<endif>"), "1");
+    // Array indexes, members, and iteration
+    assertEquals(render("<json.items.(\"0\")><json.items.(\"-1\")>"), "13");
+    assertEquals(render("<json.items.size>"), "3");
+    assertEquals(render("<json.items:{n|<n.inc>}; separator=\",\">"), "2,3,4");
+    assertEquals(render("<json.people.(\"1\").name><json.people.(\"9\")>"), "y");
+    // Containers as views, with unwrapped elements
+    assertEquals(render("<json.items>|<json.items:{n|<n>}>|<json.people.(\"0\")>"), "123|123|name");
+    assertEquals(render("<json.people:{p|<p.name>}>|<json.people.size>"), "xy|2");
+  }
+
+  @Test
+  public void testElements() throws Exception {
+    final ObjectMapper mapper = new ObjectMapper();
+    final byte[] json = "[{\"id\":1},{\"id\":2},{\"id\":3}]".getBytes(StandardCharsets.UTF_8);
+    final STGroup stg = new STGroupString("all(rows) ::= <%<rows:{r|<r.id>}; separator=\",\">%>\n"
+                                          + "row(r) ::= <%<r.id.inc>;%>\n"
+                                          + "bad(r) ::= <%<r.id.nope>%>");
+    STUtils.registerAllUtilsExtensions(stg);
+    JsonNodeInvokeAdaptor.register(stg);
+    // Iterated by a template
+    final ST st = stg.getInstanceOf("all");
+    st.add("rows", JsonElements.of(mapper, new ByteArrayInputStream(json)));
+    final StringWriter all = new StringWriter();
+    st.write(new AutoIndentWriter(all));
+    assertEquals(all.toString(), "1,2,3");
+    // Rendered per element
+    final StringWriter each = new StringWriter();
+    final int n = JsonElements.renderEach(stg, "row", "r",
+                                          JsonElements.of(mapper, new ByteArrayInputStream(json)), each, null);
+    assertEquals(n, 3);
+    assertEquals(each.toString(), "2;3;4;");
+    expectThrows(IOException.class, () -> JsonElements.of(mapper, new ByteArrayInputStream("{}".getBytes())));
+    // Closed, when a render fails part way.
+    final JsonParser failing = mapper.getFactory().createParser(json);
+    final STErrorListener throwing = new ErrorBuffer() {
+      @Override
+      public void runTimeError(final STMessage msg) {
+        throw new IllegalStateException(msg.toString());
+      }
+    };
+    expectThrows(IllegalStateException.class, () -> JsonElements.renderEach(stg, "bad", "r", JsonElements.of(failing),
+                                                                            new StringWriter(), throwing));
+    assertTrue(failing.isClosed());
+    // Closed, when not an array.
+    final JsonParser parser = mapper.getFactory().createParser("{}");
+    expectThrows(IOException.class, () -> JsonElements.of(parser));
+    assertTrue(parser.isClosed());
+  }
+}
@@ -0,0 +1,67 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.NumberRenderer;
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.testng.annotations.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author rwperrott
+ */
+public class NumberInvokeRendererTest {
+  private static final String[] FORMATS = {"%d", "%5d", "%05d", "0x%04X", "%x", "%X", "<%08x>", "%,d", "%.2f"};
+  private static final Number[] VALUES = {
+    0, 7, -7, 12345, -12345, (byte) -1, (short) -2, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE
+  };
+
+  @Test
+  public void testLikeFormatter() {
+    final NumberInvokeRenderer r = new NumberInvokeRenderer();
+    for (Locale locale : new Locale[]{Locale.ROOT, Locale.GERMANY, new Locale("ar", "EG")})
+      for (String format : FORMATS)
+        for (Number n : VALUES) {
+          if (format.endsWith("f"))
+            continue;
+          // Twice, to also use the cached format.
+          for (int k = 0; k < 2; k++)
+            assertEquals(r.toString(n, format, locale), String.format(locale, format, n), format + " " + n);
+        }
+    assertEquals(r.toString(1.5, "%.2f", Locale.ROOT), "1.50");
+    assertEquals(r.toString(-0.5, "%.2f", Locale.GERMANY), "-0,50");
+  }
+
+  @Test
+  public void testLikeNumberRenderer() {
+    final NumberInvokeRenderer r = new NumberInvokeRenderer();
+    final NumberRenderer expected = new NumberRenderer();
+    for (String format : new String[]{"#,##0.00", "n=%d", "%08x", null})
+      for (Number n : VALUES)
+        assertEquals(r.toString(n, format, Locale.GERMANY), expected.toString(n, format, Locale.GERMANY));
+  }
+
+  @Test
+  public void testDecimalFormat() {
+    final NumberInvokeRenderer r = new NumberInvokeRenderer(true);
+    final DecimalFormat f = new DecimalFormat("#,##0.00", DecimalFormatSymbols.getInstance(Locale.GERMANY));
+    for (Number n : VALUES)
+      assertEquals(r.toString(n, "#,##0.00", Locale.GERMANY), f.format(n));
+    assertEquals(r.toString(1234.5, null, Locale.ROOT), "1234.5");
+  }
+
+  @Test
+  public void testRegistered() {
+    final STGroup stGroup = new STGroup();
+    STUtils.registerAllUtilsExtensions(stGroup);
+    final ST st = new ST(stGroup, "<n; format=\"0x%04X\"> <n; format=\"#,##0\">");
+    st.add("n", 255);
+    assertEquals(st.render(), "0x00FF #,##0");
+    NumberInvokeRenderer.register(stGroup, true);
+    assertEquals(st.render(), "0x00FF 255");
+  }
+}
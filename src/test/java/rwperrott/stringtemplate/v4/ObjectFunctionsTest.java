@@ -0,0 +1,82 @@
+package rwperrott.stringtemplate.v4;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author rwperrott
+ */
+public class ObjectFunctionsTest {
+  @Test
+  public void testSortedArrayView() {
+    assertTrue(ObjectFunctions.toSortedSet(new int[0]) instanceof SortedSet);
+    final SortedSet<Integer> set = new ObjectFunctions.SortedArrayView<>(new Object[]{1, 3, 5, 7, 9}, 0, 5);
+    assertEquals(set.subSet(3, 8), new TreeSet<>(Arrays.asList(3, 5, 7)));
+    assertEquals(set.subSet(2, 3), Collections.emptySet());
+    assertEquals(set.headSet(5), new TreeSet<>(Arrays.asList(1, 3)));
+    assertEquals(set.tailSet(6), new TreeSet<>(Arrays.asList(7, 9)));
+    // Nested views stay within their parent.
+    final SortedSet<Integer> sub = set.subSet(3, 9);
+    assertEquals(sub.headSet(100), new TreeSet<>(Arrays.asList(3, 5, 7)));
+    assertEquals(sub.tailSet(0).first(), Integer.valueOf(3));
+    assertEquals(sub.last(), Integer.valueOf(7));
+    assertTrue(sub.contains(5));
+    assertFalse(sub.contains(9));
+    expectThrows(NoSuchElementException.class, () -> set.subSet(4, 5).first());
+    expectThrows(IllegalArgumentException.class, () -> set.subSet(5, 3));
+  }
+
+  @Test
+  public void testViews() {
+    final List<String> list = new ArrayList<>(Arrays.asList("b", "a", "b"));
+    // Set view de-duplicates on iteration, in source order, and reflects the source.
+    final Set<String> set = ObjectFunctions.toOrderedSet(list);
+    assertEquals(new ArrayList<>(set), Arrays.asList("b", "a"));
+    assertEquals(set.size(), 2);
+    list.add("c");
+    assertTrue(set.contains("c"));
+    // List view over a Set is not a copy.
+    final Set<String> source = new LinkedHashSet<>(list);
+    final List<String> view = ObjectFunctions.toList(source);
+    assertEquals(view, Arrays.asList("b", "a", "c"));
+    assertEquals(view.get(2), "c");
+    // Already the requested type.
+    assertSame(ObjectFunctions.toList(list), list);
+    assertSame(ObjectFunctions.toSet(source), source);
+    expectThrows(UnsupportedOperationException.class, () -> view.iterator().remove());
+    // Not a stale copy, after random access.
+    source.add("d");
+    assertEquals(view.get(3), "d");
+    assertEquals(view.size(), 4);
+    // An array view doesn't write through.
+    final int[] a = {1, 2};
+    final List<Integer> ints = ObjectFunctions.toList(a);
+    assertEquals(ints, Arrays.asList(1, 2));
+    expectThrows(UnsupportedOperationException.class, () -> ints.set(0, 3));
+    expectThrows(UnsupportedOperationException.class, () -> ObjectFunctions.<String>toList(new String[]{"a"}).set(0, "b"));
+  }
+
+  @Test
+  public void testSinglePass() {
+    final boolean[] closed = {false};
+    final Stream<String> stream = Stream.of("a", "b", "c").onClose(() -> closed[0] = true);
+    final Iterable<String> once = ObjectFunctions.toIterable(stream);
+    // The same Iterator each time, so testing hasNext loses nothing, and iteration resumes.
+    assertTrue(once.iterator().hasNext());
+    assertEquals(once.iterator().next(), "a");
+    final List<String> rest = new ArrayList<>();
+    once.forEach(rest::add);
+    assertEquals(rest, Arrays.asList("b", "c"));
+    assertTrue(closed[0]);
+    assertFalse(once.iterator().hasNext());
+    // Primitive Streams, Iterators and Spliterators
+    assertEquals(ObjectFunctions.toList(IntStream.range(0, 3)), Arrays.asList(0, 1, 2));
+    assertEquals(ObjectFunctions.toList(Arrays.asList(1, 2).iterator()), Arrays.asList(1, 2));
+    assertEquals(ObjectFunctions.toOrderedSet(Arrays.asList(1, 2, 1).spliterator()), new LinkedHashSet<>(Arrays.asList(1, 2)));
+  }
+}
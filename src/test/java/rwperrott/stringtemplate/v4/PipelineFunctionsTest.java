@@ -0,0 +1,79 @@
+package rwperrott.stringtemplate.v4;
+
+import org.testng.annotations.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static rwperrott.stringtemplate.v4.Test.test;
+
+/**
+ * @author rwperrott
+ */
+public class PipelineFunctionsTest {
+  private static <T> List<T> toList(Iterable<T> it) {
+    final List<T> list = new ArrayList<>();
+    it.forEach(list::add);
+    return list;
+  }
+
+  @Test
+  public void testLazy() {
+    // Endless source, so only passes if evaluated on demand.
+    final Iterable<Integer> naturals = () -> IntStream.iterate(0, i -> i + 1).iterator();
+    final Iterable<Object> integers = PipelineFunctions.filterBy(naturals, "getClass.getSimpleName", "Integer");
+    assertEquals(toList(PipelineFunctions.take(PipelineFunctions.skip(integers, 2), 3)), Arrays.asList(2, 3, 4));
+    assertEquals(toList(PipelineFunctions.take(PipelineFunctions.chunk(naturals, 2), 2)),
+                 Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3)));
+  }
+
+  @Test
+  public void testProperties() {
+    final List<String> words = Arrays.asList("b", "", "aa", "c", "bb");
+    assertEquals(toList(PipelineFunctions.filter(words, "empty")), Collections.singletonList(""));
+    assertEquals(toList(PipelineFunctions.distinctBy(words, "length")), Arrays.asList("b", "", "aa"));
+    final Map<Object, List<Object>> groups = PipelineFunctions.groupBy(words, "length");
+    assertEquals(new ArrayList<>(groups.keySet()), Arrays.asList(1, 0, 2));
+    assertEquals(groups.get(2), Arrays.asList("aa", "bb"));
+    // Re-iterable, and reflects the source
+    final List<String> source = new ArrayList<>(words);
+    final Iterable<Object> filtered = PipelineFunctions.filterBy(source, "length", 2);
+    assertEquals(toList(filtered), Arrays.asList("aa", "bb"));
+    source.add("cc");
+    assertEquals(toList(filtered).stream().map(Object::toString).collect(Collectors.joining()), "aabbcc");
+  }
+
+  public static final class Model {
+    public int take() {
+      return 2;
+    }
+
+    public String filter() {
+      return "own";
+    }
+
+    public String getFilter() {
+      return "getter";
+    }
+  }
+
+  @Test
+  public void testOnlySources() {
+    // A model's own methods aren't merged with the functions, and it doesn't get the others.
+    assertEquals(TypeFunctions.get(Model.class, "take").maxTypeConverterCount(), 0);
+    assertEquals(TypeFunctions.get(Model.class, "filter").maxTypeConverterCount(), 0);
+    assertSame(TypeFunctions.get(Model.class, "chunk"), MemberInvokers.NONE);
+    assertSame(TypeFunctions.get(Model.class, "groupBy"), MemberInvokers.NONE);
+    test("p1").v(new Model()).p("filter").assertEquals("own");
+    test("p2").v(new Model()).p("getFilter").assertEquals("getter");
+    test("p3").v(new Model()).p("take").assertEquals("2");
+    // Sources still get them, including those inheriting an interface from a superclass.
+    assertNotSame(TypeFunctions.get(ArrayList.class, "chunk"), MemberInvokers.NONE);
+    assertNotSame(TypeFunctions.get(IntStream.range(0, 1).getClass(), "take"), MemberInvokers.NONE);
+    assertNotSame(TypeFunctions.get(String[].class, "take"), MemberInvokers.NONE);
+  }
+}
@@ -0,0 +1,58 @@
+package rwperrott.stringtemplate.v4;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.expectThrows;
+
+/**
+ * @author rwperrott
+ */
+public class PrimitiveListTest {
+  @Test
+  public void testOf() {
+    final int[] a = {3, 1, 2};
+    final List<Integer> list = PrimitiveList.of(a);
+    assertTrue(list instanceof IntArrayList);
+    assertEquals(list.size(), 3);
+    assertEquals(list.indexOf(2), 2);
+    // Writes through
+    list.set(0, 4);
+    assertEquals(a[0], 4);
+    list.sort(null);
+    assertEquals(a, new int[]{1, 2, 4});
+    //
+    assertEquals(PrimitiveList.of(new boolean[]{true, false}), Arrays.asList(true, false));
+    assertEquals(PrimitiveList.of(new char[]{'a', 'b'}), Arrays.asList('a', 'b'));
+    // Only for primitive arrays
+    expectThrows(IllegalArgumentException.class, () -> PrimitiveList.of(new Integer[]{1}));
+    expectThrows(IllegalArgumentException.class, () -> PrimitiveList.of("abc"));
+  }
+
+  @Test
+  public void testToSortedList() {
+    final double[] a = {3, 1, 2};
+    assertEquals(ObjectFunctions.toSortedList(a), Arrays.asList(1d, 2d, 3d));
+    assertEquals(a, new double[]{3, 1, 2}); // Unchanged
+  }
+
+  @Test
+  public void testToSortedSet() {
+    assertEquals(ObjectFunctions.toSortedSet(new int[]{3, 1, 3, 2, 1}), new TreeSet<>(Arrays.asList(1, 2, 3)));
+    assertEquals(ObjectFunctions.toSortedSet(Arrays.asList("b", "a", "b")), new TreeSet<>(Arrays.asList("a", "b")));
+    // Large enough for a parallel sort
+    final int n = ObjectFunctions.PARALLEL_SORT_THRESHOLD;
+    final long[] a = new long[n];
+    for (int i = 0; i < n; i++)
+      a[i] = n - i;
+    final List<Long> sorted = ObjectFunctions.toSortedList(a);
+    assertEquals(sorted.get(0), Long.valueOf(1));
+    assertEquals(sorted.get(n - 1), Long.valueOf(n));
+  }
+}
@@ -0,0 +1,167 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupString;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * @author rwperrott
+ */
+public class RenderCacheTest {
+  private static final String GROUP =
+    "dto(name, fields) ::= \"class <name> { <fields:{f | <f>;}; separator=\\\" \\\"> }\"\n" +
+    "counter(c) ::= \"<c>\"\n" +
+    "broken(x) ::= \"<x.nope>\"\n" +
+    "l(xs) ::= \"<xs; separator=\\\",\\\">\"\n";
+
+  private static List<String> fields(final String... kv) {
+    final List<String> l = new ArrayList<>();
+    for (int i = 0; i < kv.length; i += 2)
+      l.add(kv[i] + ' ' + kv[i + 1]);
+    return l;
+  }
+
+  private static ST dto(final STGroup stGroup, final String name, final List<String> fields) {
+    final ST st = stGroup.getInstanceOf("dto");
+    st.add("name", name);
+    st.add("fields", fields);
+    return st;
+  }
+
+  @Test
+  public void testHitsOnEqualAttributes() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(1 << 20);
+    final String a = cache.render(dto(stGroup, "A", fields("x", "int", "y", "long")));
+    assertEquals(a, "class A { x int; y long; }");
+    // Equal, but different instances.
+    assertEquals(cache.render(dto(stGroup, "A", fields("x", "int", "y", "long"))), a);
+    assertEquals(cache.stats().hits, 1);
+    // Reordered, and changed.
+    assertEquals(cache.render(dto(stGroup, "A", fields("y", "long", "x", "int"))), "class A { y long; x int; }");
+    assertEquals(cache.render(dto(stGroup, "A", fields("x", "int", "y", "short"))), "class A { x int; y short; }");
+    assertEquals(cache.render(dto(stGroup, "B", fields("x", "int", "y", "long"))), "class B { x int; y long; }");
+    // Another group.
+    assertEquals(cache.render(dto(new STGroupString("test", GROUP), "A", fields("x", "int", "y", "long"))), a);
+    assertEquals(cache.stats().hits, 1);
+    assertEquals(cache.stats().size, 5);
+  }
+
+  @Test
+  public void testArraysAndLists() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(1 << 20);
+    final int[] values = {1, 2};
+    ST st = stGroup.getInstanceOf("counter");
+    st.add("c", values);
+    assertEquals(cache.render(st), "12");
+    values[1] = 3; // The key is a copy
+    st = stGroup.getInstanceOf("counter");
+    st.add("c", values);
+    assertEquals(cache.render(st), "13");
+    st = stGroup.getInstanceOf("counter");
+    st.add("c", Arrays.asList(1, 3));
+    assertEquals(cache.render(st), "13");
+    assertEquals(cache.stats().hits, 0);
+  }
+
+  @Test
+  public void testMessagesNotCached() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(1 << 20);
+    for (int i = 0; i < 2; i++) {
+      final ST st = stGroup.getInstanceOf("broken");
+      st.add("x", "s");
+      final List<String> errors = new ArrayList<>();
+      cache.render(st, null, (STErrorConsumer) (label, msg) -> errors.add(label), -1);
+      assertEquals(errors.size(), 1);
+    }
+    assertEquals(cache.stats().size, 0);
+  }
+
+  @Test
+  public void testVerify() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(1 << 20).verifyEvery(2);
+    // Identity equality, but a changing toString, so impure.
+    final Object impure = new Object() {
+      private final AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public String toString() {
+        return Integer.toString(count.incrementAndGet());
+      }
+    };
+    final String[] outputs = new String[5];
+    for (int i = 0; i < outputs.length; i++) {
+      final ST st = stGroup.getInstanceOf("counter");
+      st.add("c", impure);
+      outputs[i] = cache.render(st);
+    }
+    assertEquals(outputs[0], "1");
+    assertEquals(outputs[1], "1"); // A stale hit
+    assertEquals(outputs[2], "2"); // Verified
+    assertNotEquals(outputs[3], outputs[4]);
+    assertEquals(cache.verifications(), 1);
+    assertTrue(cache.impureTemplates().contains("/counter"), cache.impureTemplates().toString());
+  }
+
+  @Test
+  public void testBounded() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(10);
+    for (int i = 0; i < 100; i++) {
+      final ST st = stGroup.getInstanceOf("counter");
+      st.add("c", i);
+      cache.render(st);
+    }
+    assertTrue(cache.stats().weight <= 10, cache.stats().toString());
+  }
+
+  @Test
+  public void testKeyWeighed() {
+    final STGroup stGroup = new STGroupString("test", GROUP + "n(xs) ::= \"<length(xs)>\"\n");
+    final RenderCache cache = new RenderCache(5000);
+    // A small output from a large model.
+    for (int i = 0; i < 10; i++) {
+      final ST st = stGroup.getInstanceOf("n");
+      st.add("xs", new ArrayList<>(Collections.nCopies(1000, i)));
+      assertEquals(cache.render(st), "1000");
+    }
+    assertEquals(cache.stats().size, 1, cache.stats().toString());
+    assertTrue(cache.stats().weight > 1000 * RenderCache.ELEMENT_WEIGHT, cache.stats().toString());
+  }
+
+  @Test
+  public void testSingleUseIterableNotCached() {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    final RenderCache cache = new RenderCache(1 << 20);
+    for (int i = 0; i < 2; i++) {
+      final ST st = stGroup.getInstanceOf("l");
+      final Iterator<String> it = Arrays.asList("a", "b").iterator();
+      final Iterable<String> once = () -> it;
+      st.add("xs", once);
+      assertEquals(cache.render(st), "a,b");
+    }
+    assertEquals(cache.stats().size, 0);
+    // A Collection is copied into the key, and cached.
+    for (int i = 0; i < 2; i++) {
+      final ST st = stGroup.getInstanceOf("l");
+      st.add("xs", Arrays.asList("a", "b"));
+      assertEquals(cache.render(st), "a,b");
+    }
+    assertEquals(cache.stats().hits, 1);
+  }
+}
@@ -0,0 +1,132 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupString;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.*;
+
+/**
+ * @author rwperrott
+ */
+public class RenderSchedulerTest {
+  private static final String GROUP =
+    "class(name, fields) ::= <<\n" +
+    "class <name> {\n" +
+    "  <fields:field(); separator=\"\\n\">\n" +
+    "}\n" +
+    ">>\n" +
+    "field(f) ::= \"private int <f> = <f.length>;\"\n";
+
+  @Test
+  public void testRun() throws Exception {
+    final STGroup stGroup = new STGroupString("test", GROUP);
+    STUtils.registerAllUtilsExtensions(stGroup);
+    final Path dir = Files.createTempDirectory("RenderSchedulerTest");
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<RenderScheduler.Job> jobs = new ArrayList<>();
+      for (int i = 0; i < 200; i++) {
+        final List<String> fields = new ArrayList<>();
+        for (int j = 0; j <= i % 7; j++)
+          fields.add("f" + i + "_" + j);
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("name", "C" + i);
+        attributes.put("fields", fields);
+        jobs.add(new RenderScheduler.Job("class", attributes, dir.resolve("C" + i + ".java")));
+      }
+      jobs.add(new RenderScheduler.Job("missing", null, dir.resolve("missing.java")));
+      jobs.add(new RenderScheduler.Job("field", Collections.singletonMap("f", 1), dir.resolve("bad.java")));
+      final List<RenderScheduler.Result> results = new RenderScheduler(stGroup)
+        .executor(executor)
+        .maxInFlight(8)
+        .run(jobs);
+      assertEquals(results.size(), jobs.size());
+      for (int i = 0; i < 200; i++) {
+        final RenderScheduler.Result r = results.get(i);
+        assertSame(r.job, jobs.get(i));
+        assertTrue(r.isSuccess(), r.toString());
+        final ST st = stGroup.getInstanceOf("class");
+        STUtils.applyAttributes(st, r.job.attributes);
+        final byte[] expected = st.render().getBytes(StandardCharsets.UTF_8);
+        assertEquals(Files.readAllBytes(r.job.output), expected);
+        assertTrue(r.isWritten());
+      }
+      assertTrue(results.get(200).failure() instanceof IllegalArgumentException);
+      // An Integer has no length property.
+      assertNull(results.get(201).failure());
+      assertEquals(results.get(201).messages().size(), 1, results.get(201).toString());
+      assertEquals(RenderScheduler.summary(results), "201 written, 0 skipped, 1 failed");
+
+      // Again, only writing the changed files.
+      final Path changed = jobs.get(3).output;
+      Files.write(changed, "old".getBytes(StandardCharsets.UTF_8));
+      final FileTime old = FileTime.fromMillis(0);
+      for (int i = 0; i < 200; i++)
+        Files.setLastModifiedTime(jobs.get(i).output, old);
+      final List<RenderScheduler.Result> again = new RenderScheduler(stGroup)
+        .executor(executor)
+        .skipUnchanged(true)
+        .run(jobs.subList(0, 200));
+      assertEquals(RenderScheduler.summary(again), "1 written, 199 skipped, 0 failed");
+      assertTrue(again.get(3).isWritten());
+      assertTrue(again.get(4).isSkipped());
+      assertEquals(Files.getLastModifiedTime(jobs.get(4).output), old);
+      assertEquals(Files.readAllBytes(changed), Files.readAllBytes(jobs.get(3).output));
+    } finally {
+      executor.shutdown();
+      try (Stream<Path> files = Files.list(dir)) {
+        files.forEach(p -> {
+          try {
+            Files.delete(p);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+      }
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void testErrorIsFailure() throws Exception {
+    final STGroup stGroup = new STGroupString("test", "e(x) ::= \"<x>\"\n");
+    final Path output = Files.createTempFile("RenderSchedulerTest", ".txt");
+    final ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      final Object bad = new Object() {
+        @Override
+        public String toString() {
+          throw new AssertionError("bad");
+        }
+      };
+      final List<RenderScheduler.Result> results = new RenderScheduler(stGroup)
+        .executor(executor)
+        .run(Collections.singletonList(
+          new RenderScheduler.Job("e", Collections.singletonMap("x", bad), output)));
+      final RenderScheduler.Result r = results.get(0);
+      assertTrue(r.failure() instanceof AssertionError, r.toString());
+      assertFalse(r.isSkipped());
+      assertEquals(RenderScheduler.summary(results), "0 written, 0 skipped, 1 failed");
+    } finally {
+      executor.shutdown();
+      Files.deleteIfExists(output);
+    }
+  }
+}
@@ -1,10 +1,18 @@
 package rwperrott.stringtemplate.v4;
 
+import org.stringtemplate.v4.ST;
 import org.stringtemplate.v4.STGroup;
 import org.stringtemplate.v4.STGroupString;
+import org.stringtemplate.v4.misc.STMessage;
+import org.stringtemplate.v4.misc.STRuntimeMessagePatch;
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static java.lang.String.format;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 /**
@@ -83,4 +91,29 @@ public class STContextTest {
     }
   }
 
+  @Test
+  public void testPatch() {
+    final STGroup stGroup = new STGroupString("testPatch",
+                                              "a(x) ::= \"<x>\"\n" +
+                                              "\n" +
+                                              "b(x) ::= <<\n" +
+                                              "line one\n" +
+                                              "  <x.nope>\n" +
+                                              ">>\n");
+    final List<STMessage> messages = new ArrayList<>();
+    stGroup.setListener((STErrorConsumer) (label, msg) -> messages.add(msg));
+    final ST st = stGroup.getInstanceOf("b");
+    st.add("x", "s");
+    st.render();
+    assertEquals(messages.size(), 1);
+    try (STContext ctx = newSTContext(false)) {
+      // Preloads the template lines, with the STGroup encoding.
+      ctx.registerRenderer(stGroup, "java.lang.String", "org.stringtemplate.v4.StringRenderer");
+      final STMessage patched = ctx.patch(messages.get(0), "UTF-8");
+      assertTrue(patched instanceof STRuntimeMessagePatch);
+      assertEquals(((STRuntimeMessagePatch) patched).getSourceLocation(), "5:3");
+    } catch (Exception e) {
+      fail("patch failed", e);
+    }
+  }
 }
@@ -0,0 +1,128 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * @author rwperrott
+ */
+public class STRendererTest {
+  private static ST newST(final int lines) {
+    final List<String> values = new ArrayList<>();
+    // Odd lengths, so surrogate pairs straddle chunk and buffer boundaries.
+    for (int i = 0; i < lines; i++)
+      values.add("line " + i + " caf\u00e9 \u20ac \ud83d\ude00 \ud83d");
+    final ST st = new ST(new STGroup(), "<values; separator=\"\\n\">");
+    st.add("values", values);
+    return st;
+  }
+
+  @Test
+  public void testChannel() throws IOException {
+    for (Charset charset : new Charset[]{StandardCharsets.UTF_8, StandardCharsets.UTF_16LE, StandardCharsets.ISO_8859_1})
+      for (int lines : new int[]{0, 1, 5000}) {
+        final ST st = newST(lines);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final long n = STRenderer.write(st, Channels.newChannel(bytes), charset, null, null, -1);
+        final byte[] expected = st.render().getBytes(charset);
+        assertEquals(n, expected.length);
+        assertEquals(bytes.toByteArray(), expected, charset + " " + lines);
+      }
+  }
+
+  @Test
+  public void testFile() throws IOException {
+    final Path file = Files.createTempFile("STRendererTest", ".txt");
+    try {
+      Files.write(file, new byte[1 << 20]); // Must be truncated
+      final ST st = newST(2000);
+      STRenderer.write(st, file);
+      assertEquals(Files.readAllBytes(file), st.render().getBytes(StandardCharsets.UTF_8));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testWriteIfChanged() throws IOException {
+    final Path file = Files.createTempFile("STRendererTest", ".txt");
+    try {
+      final ST st = newST(5000);
+      final byte[] expected = st.render().getBytes(StandardCharsets.UTF_8);
+      assertTrue(STRenderer.writeIfChanged(st, file)); // Was empty
+      assertEquals(Files.readAllBytes(file), expected);
+      assertFalse(STRenderer.writeIfChanged(st, file));
+      // Differs in the middle, too long, and too short.
+      final byte[] differs = expected.clone();
+      differs[differs.length / 2] ^= 1;
+      final byte[] longer = Arrays.copyOf(expected, expected.length + 3);
+      final byte[] shorter = Arrays.copyOf(expected, expected.length - 100_000);
+      for (byte[] old : new byte[][]{differs, longer, shorter}) {
+        Files.write(file, old);
+        assertTrue(STRenderer.writeIfChanged(st, file));
+        assertEquals(Files.readAllBytes(file), expected);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testWriteIfChangedCreatesEmpty() throws IOException {
+    final Path dir = Files.createTempDirectory("STRendererTest");
+    final Path file = dir.resolve("empty.txt");
+    try {
+      final ST st = new ST("");
+      assertTrue(STRenderer.writeIfChanged(st, file)); // Created
+      assertTrue(Files.exists(file));
+      assertFalse(STRenderer.writeIfChanged(st, file));
+    } finally {
+      Files.deleteIfExists(file);
+      Files.delete(dir);
+    }
+  }
+
+  @Test
+  public void testFailure() {
+    final WritableByteChannel broken = new WritableByteChannel() {
+      @Override
+      public int write(final ByteBuffer src) throws IOException {
+        throw new IOException("broken");
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    try {
+      STRenderer.write(newST(5000), broken);
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("broken"), e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package rwperrott.stringtemplate.v4;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author rwperrott
+ */
+public class SourceReadersTest {
+  private static String read(final Reader r, final int bufferSize) throws IOException {
+    try (Reader reader = r) {
+      final StringWriter w = new StringWriter();
+      final char[] buf = new char[bufferSize];
+      for (int n; -1 != (n = reader.read(buf)); )
+        w.write(buf, 0, n);
+      return w.toString();
+    }
+  }
+
+  private static void assertLikeInputStreamReader(final byte[] bytes, final String encoding) throws IOException {
+    final Path file = Files.createTempFile("SourceReadersTest", ".stg");
+    try {
+      Files.write(file, bytes);
+      final URL url = file.toUri().toURL();
+      final String expected = read(new InputStreamReader(url.openStream(), encoding), 4096);
+      for (int size : new int[]{1, 3, 8192, 100_000})
+        assertEquals(read(SourceReaders.open(url, encoding), size), expected, "size " + size);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testSmall() throws IOException {
+    assertLikeInputStreamReader("a() ::= \"café € 😀\"\n".getBytes(StandardCharsets.UTF_8), "UTF-8");
+    assertLikeInputStreamReader("b() ::= \"café\"\n".getBytes(StandardCharsets.ISO_8859_1), "ISO-8859-1");
+    assertLikeInputStreamReader(new byte[0], "UTF-8");
+  }
+
+  @Test
+  public void testLarge() throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 128 * 1024; i++)
+      sb.append("t").append(i).append("() ::= \"café 😀\"\n");
+    assertLikeInputStreamReader(sb.toString().getBytes(StandardCharsets.UTF_8), "UTF-8");
+  }
+
+  @Test
+  public void testMalformed() throws IOException {
+    assertLikeInputStreamReader(new byte[]{'a', (byte) 0xC3, 'b', (byte) 0xE2, (byte) 0x82}, "UTF-8");
+  }
+
+  @Test
+  public void testTemplateLines() throws IOException {
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; sb.length() < 128 * 1024; i++)
+      sb.append("t").append(i).append("() ::= <<\né\n>>\n");
+    final Path file = Files.createTempFile("SourceReadersTest", ".stg");
+    try {
+      Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+      try (Reader r = SourceReaders.open(file.toUri().toURL(), "UTF-8")) {
+        assertEquals(TemplateHeaderScanner.scan(r).getInt("t1000"), 3002);
+      }
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
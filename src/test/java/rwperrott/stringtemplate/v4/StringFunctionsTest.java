@@ -131,4 +131,11 @@ public class StringFunctionsTest {
     assertEquals(midstr(S, -4, -3), "");
     assertEquals(midstr(S, -4, -4), "");
   }
+
+  @Test
+  public void escapeXMLTest() {
+    // The original URLEncoder output, kept for existing templates.
+    assertEquals(escapeXML("<a b='c'>&\"caf\u00e9 x</a>"), "%3Ca+b%3D%27c%27%3E%26%22caf%C3%A9+x%3C%2Fa%3E");
+    assertEquals(escapeXML("plain_1.2"), "plain_1.2");
+  }
 }
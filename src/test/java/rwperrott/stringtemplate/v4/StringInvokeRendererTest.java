@@ -24,6 +24,29 @@ public class StringInvokeRendererTest {
     assertEquals(get("abc", "cap"), "Abc");
   }
 
+  @Test
+  public void testCachedResolution() {
+    // Locale passed when a Locale parameter, and resolution cached per format.
+    final Locale tr = new Locale("tr");
+    for (int i = 0; i < 3; i++) {
+      assertEquals(r.toString("i", "upper", tr), "\u0130");
+      assertEquals(r.toString("i", "upper", null), "I");
+    }
+    // Not a function, so the default renderer.
+    assertEquals(r.toString("abc", "[%s]", locale), "[abc]");
+  }
+
+  @Test
+  public void testPipeline() {
+    assertEquals(get(" <A&B> ", "trim|lower|xml-encode"), "&lt;a&amp;b&gt;");
+    assertEquals(get("abcdefgh", "abbreviate:6|upper"), "ABC...");
+    assertEquals(get("abcdefgh", "upper | abbreviate:6"), "ABC...");
+    // Locale passed to every stage with a Locale parameter.
+    assertEquals(r.toString(" i ", "trim|upper|cap", new Locale("tr")), "\u0130");
+    // Not all functions, so the default renderer.
+    assertEquals(get("abc", "[%s]|upper"), "[abc]|upper");
+  }
+
   private Object get(String value, String formatString) {
     return r.toString(value, formatString, locale);
   }
@@ -0,0 +1,141 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.STGroup;
+import org.stringtemplate.v4.STGroupDir;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+/**
+ * @author rwperrott
+ */
+public class TemplateDirIndexTest {
+  private static void write(final Path file, final String text) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void delete(final Path dir) throws IOException {
+    try (Stream<Path> walk = Files.walk(dir)) {
+      walk.sorted(Comparator.reverseOrder()).forEach(p -> {
+        try {
+          Files.delete(p);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    }
+  }
+
+  private static String source(final STGroup stGroup, final String templateName) throws IOException {
+    final String url = STGroupType.DIRECTORY.getTemplateSource(stGroup, templateName).toString();
+    return url.substring(url.lastIndexOf('!') + 1).replaceAll(".*/templates/+", "");
+  }
+
+  private static void assertMissing(final STGroup stGroup, final String templateName) {
+    try {
+      STGroupType.DIRECTORY.getTemplateSource(stGroup, templateName);
+      fail("found " + templateName);
+    } catch (FileNotFoundException expected) {
+      // ok
+    } catch (IOException e) {
+      fail("wrong exception", e);
+    }
+  }
+
+  @Test
+  public void testDirectory() throws IOException {
+    final Path dir = Files.createTempDirectory("TemplateDirIndexTest");
+    try {
+      final Path root = dir.resolve("templates");
+      write(root.resolve("a.stg"), "b() ::= \"b\"\n");
+      write(root.resolve("c.st"), "c() ::= \"c\"\n");
+      write(root.resolve("sub/d.st"), "d() ::= \"d\"\n");
+      final STGroup stGroup = new STGroupDir(root.toUri().toURL(), "UTF-8", '<', '>');
+      assertEquals(source(stGroup, "a/b"), "a.stg");
+      assertEquals(source(stGroup, "c"), "c.st");
+      assertEquals(source(stGroup, "sub/d"), "sub/d.st");
+      assertEquals(stGroup.getInstanceOf("sub/d").render(), "d");
+      assertMissing(stGroup, "e");
+      // Found after a rebuild
+      write(root.resolve("e.st"), "e() ::= \"e\"\n");
+      assertEquals(source(stGroup, "e"), "e.st");
+      // Not rebuilt for a miss, while no directory has changed, so left to the probe.
+      final URL url = root.toUri().toURL();
+      final FileTime old = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+      Files.setLastModifiedTime(root, old);
+      Files.setLastModifiedTime(root.resolve("sub"), old);
+      assertNull(TemplateDirIndex.resolve(url, "/.stg", "/f.st"));
+      write(root.resolve("f.st"), "f() ::= \"f\"\n");
+      Files.setLastModifiedTime(root, old);
+      assertNull(TemplateDirIndex.resolve(url, "/.stg", "/f.st"));
+      assertEquals(source(stGroup, "f"), "f.st");
+      Files.setLastModifiedTime(root, FileTime.fromMillis(System.currentTimeMillis()));
+      assertEquals(TemplateDirIndex.resolve(url, "/.stg", "/f.st").toString(), url + "f.st");
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testSymbolicLink() throws IOException {
+    final Path dir = Files.createTempDirectory("TemplateDirIndexTest");
+    try {
+      write(dir.resolve("shared/g.st"), "g() ::= \"g\"\n");
+      final Path root = dir.resolve("templates");
+      Files.createDirectories(root);
+      try {
+        Files.createSymbolicLink(root.resolve("linked"), dir.resolve("shared"));
+      } catch (UnsupportedOperationException | IOException e) {
+        throw new SkipException("no symbolic links", e);
+      }
+      final STGroup stGroup = new STGroupDir(root.toUri().toURL(), "UTF-8", '<', '>');
+      assertEquals(source(stGroup, "linked/g"), "linked/g.st");
+      assertEquals(stGroup.getInstanceOf("linked/g").render(), "g");
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void testJar() throws IOException {
+    final Path dir = Files.createTempDirectory("TemplateDirIndexTest");
+    try {
+      final Path jar = dir.resolve("t.jar");
+      try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+        for (String name : new String[]{"templates/a.stg", "templates/sub/d.st", "other/c.st"}) {
+          out.putNextEntry(new JarEntry(name));
+          final OutputStream o = out;
+          o.write((name.endsWith(".stg") ? "b() ::= \"b\"\n" : "d() ::= \"d\"\n").getBytes(StandardCharsets.UTF_8));
+          out.closeEntry();
+        }
+      }
+      final URL root = new URL("jar:" + jar.toUri() + "!/templates/");
+      final STGroup stGroup = new STGroupDir(root, "UTF-8", '<', '>');
+      assertEquals(source(stGroup, "a/b"), "a.stg");
+      assertEquals(source(stGroup, "sub/d"), "sub/d.st");
+      assertMissing(stGroup, "c");
+      assertTrue(STGroupType.DIRECTORY.getTemplateSource(stGroup, "sub/d").toString().startsWith("jar:"));
+    } finally {
+      delete(dir);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package rwperrott.stringtemplate.v4;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.util.regex.Matcher;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author rwperrott
+ */
+public class TemplateHeaderScannerTest {
+  private static final String SOURCE =
+    "import \"lib.stg\"\n" +
+    "a() ::= <<\n" +
+    "body\n" +
+    ">>\r\n" +
+    "B(x,y)   ::=   \"<x>\"\r" +
+    "  c() ::= \"indented\"\n" +
+    "d (x) ::= \"space\"\n" +
+    "e(x y) ::= \"space\"\r\n" +
+    "f(x) :: = \"split\"\n" +
+    "g_1.h(x) ::=\n" +
+    "1() ::= \"digit\"\n" +
+    "\r\n" +
+    "last(x) ::= \"<x>\"";
+
+  // The LineNumberReader and regex scan, which TemplateHeaderScanner replaced.
+  private static Object2IntMap<String> byRegex(final String source) throws IOException {
+    final Object2IntMap<String> lines = new Object2IntOpenHashMap<>();
+    lines.defaultReturnValue(-1);
+    try (LineNumberReader lnr = new LineNumberReader(new StringReader(source))) {
+      lnr.setLineNumber(1);
+      for (String line; (line = lnr.readLine()) != null; ) {
+        final Matcher m = STUtils.templateMatcher(line);
+        if (m.matches())
+          lines.put(m.group(1), lnr.getLineNumber());
+      }
+    }
+    return lines;
+  }
+
+  @Test
+  public void testLikeRegex() throws IOException {
+    final Object2IntMap<String> expected = byRegex(SOURCE);
+    assertEquals(expected.keySet().size(), 4, expected.toString());
+    assertEquals(TemplateHeaderScanner.scan(new StringReader(SOURCE)), expected);
+    // Every chunk boundary, including between \r and \n.
+    for (int size = 1; size < 8; size++)
+      assertEquals(TemplateHeaderScanner.scan(new StringReader(SOURCE), new char[size]), expected, "size " + size);
+  }
+
+  @Test
+  public void testLineNumbers() throws IOException {
+    final Object2IntMap<String> lines = TemplateHeaderScanner.scan(new StringReader(SOURCE));
+    assertEquals(lines.getInt("a"), 3);
+    assertEquals(lines.getInt("B"), 6);
+    assertEquals(lines.getInt("g_1.h"), 11);
+    assertEquals(lines.getInt("last"), 14);
+    assertEquals(lines.getInt("c"), -1);
+  }
+}
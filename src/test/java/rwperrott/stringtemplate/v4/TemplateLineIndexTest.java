@@ -0,0 +1,45 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.STGroupString;
+import org.stringtemplate.v4.compiler.CompiledST;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+/**
+ * @author rwperrott
+ */
+public class TemplateLineIndexTest {
+  private static final String TEXT = "one\ntwo\r\nthree\rfour\n\nsix";
+
+  @Test
+  public void testLikeCounting() {
+    final TemplateLineIndex index = new TemplateLineIndex(TEXT);
+    assertEquals(index.lineCount(), 6);
+    // Counted, like STRuntimeMessagePatch did, for every offset at the start of, or inside, a line.
+    int line = 0;
+    int column = 0;
+    for (int p = 0; p < TEXT.length(); p++) {
+      final char c = TEXT.charAt(p);
+      if (c == '\n' && p > 0 && TEXT.charAt(p - 1) == '\r')
+        continue;
+      assertEquals(index.line(p), line, "line at " + p);
+      assertEquals(index.column(p), column, "column at " + p);
+      if (c == '\r' || c == '\n') {
+        line++;
+        column = 0;
+      } else
+        column++;
+    }
+    assertEquals(index.line(TEXT.length()), 5);
+    assertEquals(index.column(TEXT.length()), 3);
+  }
+
+  @Test
+  public void testCachedPerTemplate() {
+    final CompiledST impl = new STGroupString("test", "a() ::= <<\nx\ny\n>>\n").lookupTemplate("a");
+    assertSame(TemplateLineIndex.of(impl), TemplateLineIndex.of(impl));
+    assertEquals(TemplateLineIndex.of(impl).lineCount(), 2);
+  }
+}
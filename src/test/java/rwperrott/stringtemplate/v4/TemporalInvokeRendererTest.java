@@ -0,0 +1,52 @@
+package rwperrott.stringtemplate.v4;
+
+import org.stringtemplate.v4.ST;
+import org.stringtemplate.v4.STGroup;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * @author rwperrott
+ */
+public class TemporalInvokeRendererTest {
+  @Test
+  public void testFormats() {
+    final TemporalInvokeRenderer r = new TemporalInvokeRenderer();
+    final LocalDate date = LocalDate.of(2020, 2, 29);
+    final LocalTime time = LocalTime.of(13, 5, 7);
+    final LocalDateTime dateTime = LocalDateTime.of(date, time);
+    assertEquals(r.toString(date, null, Locale.UK), date.toString());
+    assertEquals(r.toString(date, "yyyy/MM/dd", Locale.UK), "2020/02/29");
+    assertEquals(r.toString(dateTime, "ISO_LOCAL_DATE_TIME", Locale.UK), "2020-02-29T13:05:07");
+    assertEquals(r.toString(date, "medium", Locale.UK),
+                 DateTimeFormatter.ofLocalizedDate(FormatStyle.MEDIUM).withLocale(Locale.UK).format(date));
+    assertEquals(r.toString(time, "short", Locale.UK),
+                 DateTimeFormatter.ofLocalizedTime(FormatStyle.SHORT).withLocale(Locale.UK).format(time));
+    assertEquals(r.toString(dateTime, "medium", Locale.UK),
+                 DateTimeFormatter.ofLocalizedDateTime(FormatStyle.MEDIUM).withLocale(Locale.UK).format(dateTime));
+    assertEquals(r.toString(dateTime, "date:short", Locale.UK),
+                 DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).withLocale(Locale.UK).format(dateTime));
+    // Same format, different kind of value, so compiled separately.
+    assertEquals(r.toString(time, "medium", Locale.UK),
+                 DateTimeFormatter.ofLocalizedTime(FormatStyle.MEDIUM).withLocale(Locale.UK).format(time));
+    assertEquals(r.toString(Instant.EPOCH, "yyyy-MM-dd HH:mm", Locale.UK), "1970-01-01 00:00");
+  }
+
+  @Test
+  public void testRegistered() {
+    final STGroup stGroup = new STGroup();
+    STUtils.registerAllUtilsExtensions(stGroup);
+    final ST st = new ST(stGroup, "<d; format=\"yyyyMMdd\">");
+    st.add("d", LocalDate.of(2021, 12, 31));
+    assertEquals(st.render(), "20211231");
+  }
+}
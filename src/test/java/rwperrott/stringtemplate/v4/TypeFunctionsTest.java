@@ -1,7 +1,15 @@
 package rwperrott.stringtemplate.v4;
 
+import org.apache.commons.lang3.StringUtils;
 import org.testng.annotations.Test;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.*;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
 /**
@@ -18,5 +26,71 @@ public class TypeFunctionsTest {
       t.printStackTrace();
       fail("failed", t);
     }
+    final TypeFunctions.Counts counts = TypeFunctions.counts();
+    assertTrue(counts.valueTypes > 0, counts.toString());
+    assertTrue(counts.names > 0, counts.toString());
+    assertTrue(counts.distinctInvokers > 0, counts.toString());
+    assertTrue(counts.invokers >= counts.distinctInvokers, counts.toString());
+    // Signatures are interned, so shared by invokers with the same parameter types.
+    assertTrue(counts.signatures > 0 && counts.signatures < counts.distinctInvokers, counts.toString());
+  }
+
+  @Test
+  public void testSharedSignatures() throws Exception {
+    final Method method = StringUtils.class.getMethod("abbreviate", String.class, int.class);
+    final TypeIndexMap valueIndexOf = new TypeIndexMap();
+    final MemberInvoker.WithValueType mi = (MemberInvoker.WithValueType) MemberInvoker.forStaticMethod(
+      String.class, method, MethodHandles.lookup().unreflect(method),
+      TypeConverter.toTypeConverters(method.getParameterTypes(), valueIndexOf), valueIndexOf);
+    // Views are cached per valueIndex, and signatures are interned.
+    final MemberInvoker view = mi.forValueType(String.class);
+    assertSame(mi.forValueType(String.class), view);
+    assertSame(view.typeConverters(), TypeConverter.intern(new TypeConverter[]{TypeConverter.toTypeConverter(int.class)}));
+    assertSame(mi.typeConverters(), TypeConverter.intern(TypeConverter.toTypeConverters(method.getParameterTypes())));
+  }
+
+  @Test
+  public void testBoundedCache() throws Throwable {
+    new StringInvokeAdaptor(); // Registers String functions, which must be pinned.
+    final CacheStats before = TypeFunctions.stats();
+    TypeFunctions.maximumWeight(before.weight + 1);
+    try {
+      for (Class<?> cls : Arrays.asList(ArrayList.class, LinkedList.class, HashMap.class, TreeMap.class, HashSet.class))
+        TypeFunctions.get(cls, "size");
+      // The value just put is kept, even if over the maximum, until the next eviction.
+      TypeFunctions.maximumWeight(before.weight + 1);
+      final CacheStats after = TypeFunctions.stats();
+      assertTrue(after.evictions > before.evictions, after.toString());
+      assertTrue(after.weight <= before.weight + 1, after.toString());
+      final MemberInvoker mi = TypeFunctions.get(String.class, "leftstr")
+        .find(true, Object.class, new ArrayList<>(Collections.singletonList(1)));
+      assertEquals(mi.invoke("abc", Collections.singletonList(1)), "a");
+    } finally {
+      TypeFunctions.maximumWeight(Long.MAX_VALUE);
+    }
+  }
+
+  public static final class Box {
+  }
+
+  public static final class BoxFunctions {
+    public static String label(final Box box) {
+      return "box";
+    }
+  }
+
+  @Test
+  public void testRegisterWhenFull() throws Throwable {
+    TypeFunctions.maximumWeight(1);
+    try {
+      // Must be pinned before its insertion can evict it.
+      TypeFunctions.registerFunctionClasses(Box.class, BoxFunctions.class);
+      for (Class<?> cls : Arrays.asList(ArrayList.class, LinkedList.class, HashMap.class))
+        TypeFunctions.get(cls, "size");
+      final MemberInvoker mi = TypeFunctions.get(Box.class, "label").find(true, Object.class, new ArrayList<>());
+      assertEquals(mi.invoke(new Box(), Collections.emptyList()), "box");
+    } finally {
+      TypeFunctions.maximumWeight(Long.MAX_VALUE);
+    }
   }
 }